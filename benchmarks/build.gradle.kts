@@ -0,0 +1,78 @@
+import groovy.json.JsonSlurper
+import java.util.Properties
+
+plugins {
+    id("me.champeau.jmh") version "0.6.6"
+}
+
+dependencies {
+    jmh(project(":plugin"))
+}
+
+val baselineDir = projectDir.resolve("baseline")
+val jmhResults = buildDir.resolve("results/jmh/results.json")
+
+/** The machine the benchmarks run on, stored next to the baseline so that comparisons on other machines stand out. */
+fun environment() = Properties().apply {
+    listOf("os.name", "os.arch", "java.vm.name", "java.version").forEach { setProperty(it, System.getProperty(it)) }
+    setProperty("processors", Runtime.getRuntime().availableProcessors().toString())
+}
+
+jmh {
+    jmhVersion.set("1.32")
+    fork.set(1)
+    warmupIterations.set(3)
+    iterations.set(5)
+    resultFormat.set("JSON")
+    resultsFile.set(jmhResults)
+    // restrict to a subset via: ./gradlew :benchmarks:jmh -Pbenchmarks=GameState
+    project.findProperty("benchmarks")?.let { includes.set(listOf(it.toString())) }
+}
+
+tasks {
+    val updateBaseline by creating(Copy::class) {
+        group = "benchmark"
+        description = "Runs all benchmarks and stores the results as the checked-in baseline in ${baselineDir.relativeTo(rootDir)}"
+        dependsOn("jmh")
+        from(jmhResults)
+        into(baselineDir)
+        rename { "results.json" }
+        doLast {
+            baselineDir.resolve("environment.properties").outputStream().use {
+                environment().store(it, "Reference machine of results.json")
+            }
+        }
+    }
+    
+    @Suppress("UNCHECKED_CAST")
+    val compareBaseline by creating {
+        group = "benchmark"
+        description = "Runs all benchmarks and fails if one is slower than the baseline by more than -PbaselineTolerance (default 0.1)"
+        dependsOn("jmh")
+        doLast {
+            val baseline = baselineDir.resolve("results.json")
+            if(!baseline.exists())
+                throw GradleException("No baseline at ${baseline.relativeTo(rootDir)}, create it with updateBaseline")
+            val referenceEnvironment = baselineDir.resolve("environment.properties").takeIf { it.exists() }
+                ?.let { file -> Properties().apply { file.inputStream().use { load(it) } } }
+            if(referenceEnvironment != environment())
+                logger.warn("The baseline was recorded on a different machine ($referenceEnvironment), the comparison may be off")
+            val tolerance = project.findProperty("baselineTolerance")?.toString()?.toDouble() ?: 0.1
+            fun scores(file: File) = (JsonSlurper().parse(file) as List<Map<String, Any>>).associate {
+                it["benchmark"] as String to
+                        Pair(it["mode"] as String, ((it["primaryMetric"] as Map<String, Any>)["score"] as Number).toDouble())
+            }
+            val reference = scores(baseline)
+            val regressions = scores(jmhResults).mapNotNull { (name, result) ->
+                val (mode, score) = result
+                val base = reference[name]?.second ?: return@mapNotNull null
+                // throughput should not drop, all other modes measure time which should not grow
+                val slowdown = if(mode == "thrpt") base / score - 1 else score / base - 1
+                logger.lifecycle(String.format("%-70s %+6.1f%%", name, slowdown * 100))
+                name.takeIf { slowdown > tolerance }
+            }
+            if(regressions.isNotEmpty())
+                throw GradleException("Slower than the baseline by more than ${tolerance * 100}%: ${regressions.joinToString()}")
+        }
+    }
+}
@@ -0,0 +1,32 @@
+package sc.benchmarks
+
+import sc.plugin2023.Board
+import sc.plugin2023.Field
+import sc.plugin2023.GameState
+import sc.plugin2023.util.PluginConstants
+import kotlin.random.Random
+
+/** Reproduzierbare Spielstände für die Benchmarks. */
+object Fixtures {
+    const val SEED = 2023
+    
+    /** @return ein Spielbrett, auf dem jedes Feld 1 bis 3 Fische trägt. */
+    fun board(random: Random = Random(SEED)): Board =
+            Board(List(PluginConstants.BOARD_SIZE) {
+                MutableList(PluginConstants.BOARD_SIZE) { Field(random.nextInt(1, 4)) }
+            })
+    
+    /** @return ein Spielstand, in dem [turns] zufällige Züge ausgeführt wurden, sofern das Spiel nicht vorher endet. */
+    fun state(turns: Int, random: Random = Random(SEED)): GameState {
+        val state = GameState(board(random))
+        repeat(turns) {
+            if(state.isOver)
+                return state
+            state.performMove(state.getPossibleMoves().random(random))
+        }
+        return state
+    }
+    
+    /** Ein Spielstand mitten im Spiel, nachdem alle Pinguine gesetzt wurden. */
+    fun midgame(): GameState = state(20)
+}
@@ -0,0 +1,51 @@
+package sc.benchmarks
+
+import org.openjdk.jmh.annotations.*
+import org.openjdk.jmh.infra.Blackhole
+import sc.plugin2023.GameState
+import sc.plugin2023.Move
+import sc.plugin2023.MoveBuffer
+import java.util.concurrent.TimeUnit
+
+/** Zugberechnung, Zugausführung und Kopieren eines [GameState] mitten im Spiel. */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+open class GameStateBenchmark {
+    private lateinit var state: GameState
+    private lateinit var move: Move
+    private val buffer = MoveBuffer()
+    
+    @Setup
+    fun setup() {
+        state = Fixtures.midgame()
+        move = state.getPossibleMoves().first()
+    }
+    
+    @Benchmark
+    fun possibleMoves(): List<Move> = state.getPossibleMoves()
+    
+    @Benchmark
+    fun generateMoves(): Int = state.generateMoves(buffer)
+    
+    @Benchmark
+    fun cloneState(): GameState = state.clone()
+    
+    @Benchmark
+    fun performOnClone(): GameState = state.clone().apply { performMove(move) }
+    
+    @Benchmark
+    fun performAndUndo(): Long {
+        val undo = state.performMove(move)
+        state.undoMove(move, undo)
+        return undo
+    }
+    
+    @Benchmark
+    fun zobristKey(): Long = state.zobristKey
+    
+    @Benchmark
+    fun boardEntries(blackhole: Blackhole) {
+        state.board.entries.forEach { blackhole.consume(it) }
+    }
+}
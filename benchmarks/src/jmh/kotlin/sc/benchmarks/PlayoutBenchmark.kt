@@ -0,0 +1,86 @@
+package sc.benchmarks
+
+import org.openjdk.jmh.annotations.*
+import sc.api.plugins.IGameState
+import sc.api.plugins.host.IGameListener
+import sc.api.plugins.host.IPlayerListener
+import sc.framework.plugins.Player
+import sc.plugin2023.Game
+import sc.plugin2023.GameState
+import sc.plugin2023.Move
+import sc.plugin2023.MoveBuffer
+import sc.protocol.room.MoveRequest
+import sc.shared.PlayerScore
+import java.util.concurrent.TimeUnit
+import kotlin.random.Random
+
+/** Vollständige Partien mit zufälligen Zügen, wie sie Spieler in Suchverfahren durchlaufen. */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+open class PlayoutBenchmark {
+    private lateinit var initial: GameState
+    private val buffer = MoveBuffer()
+    private val random = Random(Fixtures.SEED)
+    
+    @Setup
+    fun setup() {
+        initial = GameState(Fixtures.board())
+    }
+    
+    /** Spielt über [Game], wie der Server eine Partie durchführt, aber ohne Netzwerk und Zeitbegrenzung. */
+    @Benchmark
+    fun playoutThroughGame(): Int {
+        val game = Game(initial.clone())
+        var requested: Player? = null
+        var over = false
+        repeat(2) {
+            game.onPlayerJoined().apply {
+                addPlayerListener(IPlayerListener { if(it is MoveRequest) requested = this })
+            }
+        }
+        game.addGameListener(object: IGameListener {
+            override fun onGameOver(results: Map<Player, PlayerScore>) {
+                over = true
+            }
+            
+            override fun onStateChanged(data: IGameState, observersOnly: Boolean) {}
+        })
+        game.start()
+        while(!over) {
+            val player = requested ?: break
+            requested = null
+            val count = game.currentState.generateMoves(buffer)
+            if(count == 0)
+                break
+            game.onAction(player, Move.unpack(buffer[random.nextInt(count)]))
+        }
+        return game.currentState.turn
+    }
+    
+    /** Spielt über die Listen-API, wie es bisherige Spieler tun. */
+    @Benchmark
+    fun playoutWithLists(): Int {
+        val state = initial.clone()
+        while(!state.isOver) {
+            val moves = state.getPossibleMoves()
+            if(moves.isEmpty())
+                break
+            state.performMove(moves.random(random))
+        }
+        return state.turn
+    }
+    
+    /** Spielt über den wiederverwendeten [MoveBuffer]. */
+    @Benchmark
+    fun playoutWithBuffer(): Int {
+        val state = initial.clone()
+        while(!state.isOver) {
+            val count = state.generateMoves(buffer)
+            if(count == 0)
+                break
+            state.performMove(Move.unpack(buffer[random.nextInt(count)]))
+        }
+        return state.turn
+    }
+}
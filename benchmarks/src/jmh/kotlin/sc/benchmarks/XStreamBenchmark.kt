@@ -0,0 +1,33 @@
+package sc.benchmarks
+
+import com.thoughtworks.xstream.XStream
+import org.openjdk.jmh.annotations.*
+import sc.networking.XStreamProvider
+import sc.protocol.room.MementoMessage
+import java.util.concurrent.TimeUnit
+
+/** Serialisierung eines Spielstands, wie er nach jedem Zug an alle Beobachter geht. */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+open class XStreamBenchmark {
+    private lateinit var xStream: XStream
+    private lateinit var memento: MementoMessage
+    private lateinit var xml: String
+    
+    @Setup
+    fun setup() {
+        xStream = XStreamProvider.loadPluginXStream()
+        memento = MementoMessage(Fixtures.midgame(), null)
+        xml = xStream.toXML(memento)
+    }
+    
+    @Benchmark
+    fun marshal(): String = xStream.toXML(memento)
+    
+    @Benchmark
+    fun unmarshal(): Any = xStream.fromXML(xml)
+    
+    @Benchmark
+    fun loadXStream(): XStream = XStreamProvider.loadPluginXStream()
+}
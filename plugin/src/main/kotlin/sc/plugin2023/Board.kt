@@ -1,73 +1,359 @@
 package sc.plugin2023
 
 import com.thoughtworks.xstream.annotations.XStreamAlias
+import com.thoughtworks.xstream.annotations.XStreamConverter
 import sc.api.plugins.*
+import sc.plugin2023.util.BoardConverter
 import kotlin.random.Random
 import sc.plugin2023.util.PluginConstants as Constants
 
 /**
- * Klasse welche eine Spielbrett darstellt. Bestehend aus einem
- * zweidimensionalen Array aus Feldern
+ * Klasse welche eine Spielbrett darstellt.
+ *
+ * Die Felder werden zeilenweise als Bytes kodiert (siehe [Field.code]),
+ * sodass Kopieren und Verändern des Spielbretts keine Feld-Objekte erzeugt.
+ * Nach außen werden weiterhin unveränderliche [Field]s herausgegeben.
+ * Daher erbt es nicht den Speicher eines [RectangularBoard],
+ * bietet aber dessen Schnittstelle als Abbildung von Koordinaten auf Felder.
  *
  * @author soed
  */
+@XStreamConverter(BoardConverter::class)
 @XStreamAlias(value = "board")
-class Board(fields: TwoDBoard<Field> = generateFields()): RectangularBoard<Field>(fields) {
+class Board private constructor(
+        /** Anzahl der Felder pro Zeile. */
+        val width: Int,
+        /** Anzahl der Zeilen. */
+        val height: Int,
+        /** Die kodierten Felder, zeilenweise. */
+        private val fields: ByteArray,
+        /** Die geteilten Nachbartabellen für Spielbretter dieser Größe. */
+        private val grid: DoubledHexGrid = DoubledHexGrid.of(width, height),
+        zobristKey: Long = computeZobristKey(fields),
+        /** Anzahl der Nachbarfelder mit Fischen je Feld. */
+        private val fishNeighbors: ByteArray = countFishNeighbors(grid, fields),
+        /** Anzahl der Pinguine je Team. */
+        private val penguins: IntArray = countPenguins(fields, null),
+        /** Anzahl der Pinguine je Team, die noch ein Nachbarfeld mit Fischen haben. */
+        private val mobilePenguins: IntArray = countPenguins(fields, fishNeighbors),
+): IBoard, AbstractMap<Coordinates, Field>(), Collection<Field> {
+    
+    /** Zobrist-Schlüssel der Belegung, wird bei jeder Änderung angepasst. */
+    var zobristKey: Long = zobristKey
+        private set
+    
+    @JvmOverloads
+    constructor(fields: TwoDBoard<Field> = generateFields()): this(
+            fields.firstOrNull()?.size ?: 0,
+            fields.size,
+            encode(fields))
+    
+    constructor(board: Board): this(board.width, board.height, board.fields.clone(), board.grid, board.zobristKey,
+            board.fishNeighbors.clone(), board.penguins.clone(), board.mobilePenguins.clone())
+    
+    /** Prüft, ob die Koordinaten auf dem Spielbrett liegen. */
+    fun isValid(coordinates: Coordinates) =
+            isValid(coordinates.x, coordinates.y)
     
-    constructor(board: Board): this(board.gameField.clone())
+    private fun isValid(x: Int, y: Int) =
+            grid.index(x, y) >= 0
     
-    override fun isValid(coordinates: Coordinates) =
-            (coordinates.x + coordinates.y) % 2 == 0 &&
-            coordinates.x >= 0 &&
-            super.isValid(coordinates.copy(coordinates.x / 2))
+    /** Index des Feldes an den gegebenen Koordinaten in [fields]. */
+    private fun index(x: Int, y: Int) = y * width + x / 2
     
     /** Gibt das Feld an den gegebenen Koordinaten zurück. */
-    override operator fun get(x: Int, y: Int) =
-            super.get(x / 2, y)
+    operator fun get(x: Int, y: Int): Field {
+        if(x < 0 || x / 2 >= width || y < 0 || y >= height)
+            throw IndexOutOfBoundsException("[$x|$y]")
+        return Field.decode(fields[index(x, y)])
+    }
+    
+    /** Gibt das Feld an den gegebenen Koordinaten zurück. */
+    @Throws(IllegalArgumentException::class)
+    override operator fun get(key: Coordinates): Field =
+            try {
+                get(key.x, key.y)
+            } catch(e: IndexOutOfBoundsException) {
+                outOfBounds(key, e)
+            }
+    
+    /** Gibt das Feld mit dem gegebenen Index zurück, die Felder sind zeilenweise durchnummeriert. */
+    operator fun get(index: Int): Field =
+            Field.decode(fields[index])
+    
+    fun getOrNull(key: Coordinates) =
+            if(isValid(key))
+                get(key.x, key.y)
+            else
+                null
+    
+    /** Prüft, ob auf dieser [position] bereits ein Pinguin ist. */
+    fun isObstructed(position: Coordinates): Boolean =
+            this[position].isOccupied
+    
+    private fun outOfBounds(coords: Coordinates, cause: Throwable? = null): Nothing =
+            throw IllegalArgumentException("$coords ist nicht teil des Spielfelds!", cause)
+    
+    /** @return Anzahl der Fische an den gegebenen Koordinaten, 0 außerhalb des Spielfelds. */
+    fun fishAt(x: Int, y: Int): Int {
+        val index = grid.index(x, y)
+        return if(index >= 0) Field.fishOf(fields[index]) else 0
+    }
     
     /** Ersetzt die Fische des Feldes durch einen Pinguin.
      * @return Anzahl der ersetzten Fische. */
     operator fun set(position: Coordinates, team: Team?): Int {
-        if(!isValid(position))
+        val index = grid.index(position.x, position.y)
+        if(index < 0)
             outOfBounds(position)
-        val field = gameField[position.y][position.x / 2]
-        gameField[position.y][position.x / 2] = Field(penguin = team)
-        return field.fish
+        val fish = Field.fishOf(fields[index])
+        write(index, Field.encode(0, team))
+        return fish
+    }
+    
+    /** Legt die gegebene Anzahl Fische auf das Feld, etwa um einen Zug zurückzunehmen. */
+    fun restore(position: Coordinates, fish: Int) {
+        val index = grid.index(position.x, position.y)
+        if(index < 0)
+            outOfBounds(position)
+        write(index, Field.encode(fish, null))
+    }
+    
+    /** Schreibt das kodierte Feld und hält dabei Schlüssel und Zähler aktuell. */
+    private fun write(index: Int, code: Byte) {
+        val old = fields[index]
+        zobristKey = zobristKey xor Zobrist.key(index, old.toInt()) xor Zobrist.key(index, code.toInt())
+        updatePenguin(index, Field.teamIndexOf(old), -1)
+        fields[index] = code
+        val hasFish = Field.fishOf(code) > 0
+        if(hasFish != Field.fishOf(old) > 0) {
+            val delta = if(hasFish) 1 else -1
+            grid.forEachNeighbor(index) { neighbor ->
+                val wasMobile = fishNeighbors[neighbor] > 0
+                fishNeighbors[neighbor] = (fishNeighbors[neighbor] + delta).toByte()
+                val team = Field.teamIndexOf(fields[neighbor])
+                if(team >= 0 && wasMobile != fishNeighbors[neighbor] > 0)
+                    mobilePenguins[team] += delta
+            }
+        }
+        updatePenguin(index, Field.teamIndexOf(code), 1)
+    }
+    
+    private fun updatePenguin(index: Int, team: Int, delta: Int) {
+        if(team < 0)
+            return
+        penguins[team] += delta
+        if(fishNeighbors[index] > 0)
+            mobilePenguins[team] += delta
+    }
+    
+    fun possibleMovesFrom(pos: Coordinates): List<Move> =
+            MoveBuffer().also { addMovesFrom(pos.x, pos.y, it) }.toList()
+    
+    /** Fügt dem [buffer] alle Züge des Pinguins auf [x]/[y] hinzu.
+     * Jede Richtung wird nur bis zum ersten unpassierbaren Feld verfolgt. */
+    fun addMovesFrom(x: Int, y: Int, buffer: MoveBuffer) {
+        val index = grid.index(x, y)
+        if(index < 0)
+            outOfBounds(Coordinates(x, y))
+        addMovesFromIndex(index, buffer)
     }
     
-    fun possibleMovesFrom(pos: Coordinates) =
-            Vector.DoubledHex.directions.flatMap { vector ->
-                (1 until Constants.BOARD_SIZE).map {
-                    Move.run(pos, vector * it)
-                }.takeWhile { getOrEmpty(it.to).fish > 0 }
+    /** Folgt den vorberechneten Strahlen des Feldes, siehe [DoubledHexGrid]. */
+    private fun addMovesFromIndex(index: Int, buffer: MoveBuffer) {
+        val x = grid.x(index)
+        val y = grid.y(index)
+        for(direction in 0 until DoubledHexGrid.DIRECTIONS) {
+            for(distance in 1..grid.rayLength(index, direction)) {
+                val target = grid.rayTarget(index, direction, distance)
+                if(Field.fishOf(fields[target]) == 0)
+                    break
+                buffer.add(Move.pack(x, y, grid.x(target), grid.y(target)))
             }
+        }
+    }
+    
+    /** Ob ein Pinguin von [from] geradlinig über Felder mit Fischen nach [to] schlittern kann.
+     * Dafür werden nur die Felder auf dem Weg geprüft. */
+    fun canSlide(from: Coordinates, to: Coordinates): Boolean {
+        val index = grid.index(from.x, from.y)
+        val dx = to.x - from.x
+        val dy = to.y - from.y
+        val direction = DoubledHexGrid.direction(dx, dy)
+        if(index < 0 || direction < 0)
+            return false
+        val distance = DoubledHexGrid.distance(dx, dy)
+        if(distance > grid.rayLength(index, direction))
+            return false
+        for(step in 1..distance) {
+            if(Field.fishOf(fields[grid.rayTarget(index, direction, step)]) == 0)
+                return false
+        }
+        return true
+    }
+    
+    /** Fügt dem [buffer] alle Züge der Pinguine des gegebenen Teams hinzu. */
+    fun addMovesOf(team: Team, buffer: MoveBuffer) {
+        for(index in fields.indices) {
+            if(Field.teamIndexOf(fields[index]) == team.index)
+                addMovesFromIndex(index, buffer)
+        }
+    }
+    
+    /** Fügt dem [buffer] das Setzen eines Pinguins auf jedes Feld mit genau einem Fisch hinzu. */
+    fun addPlacements(buffer: MoveBuffer) {
+        for(index in fields.indices) {
+            if(fields[index] == SINGLE_FISH)
+                buffer.add(Move.packSet(grid.x(index), grid.y(index)))
+        }
+    }
+    
+    /** @return die Anzahl der Pinguine des gegebenen Teams auf dem Spielbrett. */
+    fun penguinCount(team: Team): Int = penguins[team.index]
+    
+    /** @return die Anzahl der Pinguine des gegebenen Teams,
+     * die noch mindestens ein benachbartes Feld mit Fischen haben. */
+    fun mobilePenguinCount(team: Team): Int = mobilePenguins[team.index]
     
     /** Returns a list of the non-null filter outputs */
-    fun <T> filterFields(filter: (Field, Coordinates) -> T?): Collection<T> =
-            gameField.flatMapIndexed { y, row ->
-                row.mapIndexedNotNull { x, field ->
-                    filter(field, Coordinates.doubledHex(x, y))
-                }
+    fun <T> filterFields(filter: (Field, Coordinates) -> T?): Collection<T> {
+        val result = ArrayList<T>()
+        for(y in 0 until height) {
+            for(x in 0 until width) {
+                filter(Field.decode(fields[y * width + x]), Coordinates.doubledHex(x, y))?.let { result.add(it) }
             }
+        }
+        return result
+    }
     
     fun getPenguins() =
             filterFields { field, coordinates ->
                 field.penguin?.let { Pair(coordinates, it) }
             }
     
-    fun getOrEmpty(key: Coordinates?) = key?.let { getOrNull(it) } ?: Field()
+    fun getOrEmpty(key: Coordinates?) = key?.let { getOrNull(it) } ?: Field.decode(0)
+    
+    /** Prüft, ob alle Felder leer sind. */
+    fun fieldsEmpty() = fields.all { it == 0.toByte() }
     
     override val entries: Set<Map.Entry<Coordinates, Field>>
         get() = filterFields { f, coordinates -> FieldPosition(coordinates, f) }.toSet()
     
+    override val size: Int
+        get() = fields.size
+    
+    override fun isEmpty(): Boolean = fields.isEmpty()
+    
+    override fun containsKey(key: Coordinates): Boolean = isValid(key)
+    
+    override fun iterator(): Iterator<Field> = object: AbstractIterator<Field>() {
+        var index = 0
+        override fun computeNext() {
+            if(index < fields.size)
+                setNext(get(index++))
+            else
+                done()
+        }
+    }
+    
+    override fun contains(element: Field): Boolean = fields.any { Field.decode(it) == element }
+    
+    override fun containsAll(elements: Collection<Field>): Boolean = elements.all { contains(it) }
+    
+    /** @return die Felder, die sich gegenüber dem gleich großen [previous] Spielbrett unterscheiden. */
+    fun changesFrom(previous: Board): List<FieldChange> {
+        require(width == previous.width && height == previous.height) { "Spielbretter unterschiedlicher Größe" }
+        val changes = ArrayList<FieldChange>()
+        for(index in fields.indices) {
+            if(fields[index] != previous.fields[index])
+                changes.add(FieldChange(index, fields[index]))
+        }
+        return changes
+    }
+    
+    /** Übernimmt die mit [changesFrom] ermittelten Änderungen. */
+    fun apply(changes: Collection<FieldChange>) {
+        changes.forEach { change ->
+            require(change.index in fields.indices && Field.isValid(change.code)) { "Ungültige Änderung $change" }
+            write(change.index, change.code)
+        }
+    }
+    
+    /** @return eine Kopie der kodierten Felder, zeilenweise, siehe [Field.code]. */
+    fun codes(): ByteArray = fields.clone()
+    
+    /** @return die Zeilen des Spielbretts als [Field]s. */
+    fun rows(): List<List<Field>> =
+            List(height) { y -> List(width) { x -> Field.decode(fields[y * width + x]) } }
+    
+    override fun toString() =
+            rows().joinToString(separator = "\n") { row ->
+                row.joinToString(separator = "") { it.toString() }
+            }.ifEmpty { "Empty Board@" + System.identityHashCode(this) }
+    
     override fun clone(): Board = Board(this)
     
+    override fun equals(other: Any?): Boolean {
+        if(this === other) return true
+        if(other !is Board) return false
+        return width == other.width && height == other.height && fields.contentEquals(other.fields)
+    }
+    
+    override fun hashCode(): Int = (zobristKey xor (zobristKey ushr 32)).toInt()
+    
+    private data class FieldPosition(
+            override val key: Coordinates,
+            override val value: Field
+    ): Map.Entry<Coordinates, Field>
+    
     companion object {
+        private val SINGLE_FISH = Field.encode(1, null)
+        
+        private val TEAMS = Team.values().size
+        
+        /** Erstellt ein Spielbrett aus kodierten Feldern, wie sie [codes] liefert. */
+        @JvmStatic
+        fun fromCodes(width: Int, height: Int, codes: ByteArray): Board {
+            require(width >= 0 && height >= 0 && codes.size == width * height) { "${codes.size} Felder passen nicht zu $width x $height" }
+            require(codes.all { Field.isValid(it) }) { "Ungültige Feldkodierung" }
+            return Board(width, height, codes.clone())
+        }
+        
+        private fun countFishNeighbors(grid: DoubledHexGrid, fields: ByteArray) =
+                ByteArray(fields.size) { index ->
+                    var count = 0
+                    grid.forEachNeighbor(index) { if(Field.fishOf(fields[it]) > 0) count++ }
+                    count.toByte()
+                }
+        
+        /** Zählt die Pinguine je Team, mit [fishNeighbors] nur die noch beweglichen. */
+        private fun countPenguins(fields: ByteArray, fishNeighbors: ByteArray?): IntArray {
+            val counts = IntArray(TEAMS)
+            for(index in fields.indices) {
+                val team = Field.teamIndexOf(fields[index])
+                if(team >= 0 && (fishNeighbors == null || fishNeighbors[index] > 0))
+                    counts[team]++
+            }
+            return counts
+        }
+        
+        private fun computeZobristKey(fields: ByteArray): Long {
+            var key = 0L
+            for(index in fields.indices)
+                key = key xor Zobrist.key(index, fields[index].toInt())
+            return key
+        }
+        
+        private fun encode(fields: TwoDBoard<Field>): ByteArray {
+            val width = fields.firstOrNull()?.size ?: 0
+            require(fields.all { it.size == width }) { "Alle Zeilen des Spielbretts müssen gleich lang sein" }
+            return ByteArray(fields.size * width) { fields[it / width][it % width].code }
+        }
+        
         /** Generiert ein neues Spielfeld mit zufällig auf dem Spielbrett verteilten Fischen. */
         private fun generateFields(seed: Int = Random.nextInt()): TwoDBoard<Field> {
             var remainingFish = Constants.BOARD_SIZE * (Constants.BOARD_SIZE + 1)
             val random = Random(seed)
-            println("Board seed: $seed")
             return List(Constants.BOARD_SIZE / 2) {
                 MutableList(Constants.BOARD_SIZE) {
                     val rand = random.nextInt(remainingFish)
@@ -83,6 +369,6 @@ class Board(fields: TwoDBoard<Field> = generateFields()): RectangularBoard<Field
                 }
             }
         }
-        
+    
     }
-}
\ No newline at end of file
+}
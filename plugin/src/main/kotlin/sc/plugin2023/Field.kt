@@ -14,7 +14,47 @@ data class Field(val fish: Int = 0, val penguin: Team? = null) : IField<Field> {
     override val isOccupied: Boolean
         get() = penguin != null
     
+    /** Kompakte Darstellung dieses Feldes, wie sie im [Board] gespeichert wird. */
+    val code: Byte
+        get() = encode(fish, penguin)
+    
     override fun clone(): Field = Field(fish, penguin)
     
     override fun toString(): String = penguin?.letter?.toString() ?: fish.toString()
+    
+    companion object {
+        private const val PENGUIN_SHIFT = 5
+        private const val FISH_MASK = (1 shl PENGUIN_SHIFT) - 1
+        
+        /** Die höchste Anzahl an Fischen, die ein Feld kodiert enthalten kann. */
+        const val MAX_FISH = FISH_MASK
+        
+        /** Alle kodierbaren Felder, damit beim Lesen aus dem [Board] keine neuen Objekte entstehen. */
+        private val cache: Array<Field> = Array((Team.values().size + 1) shl PENGUIN_SHIFT) { code ->
+            Field(code and FISH_MASK, Team.values().getOrNull((code shr PENGUIN_SHIFT) - 1))
+        }
+        
+        /** Kodiert ein Feld als Byte: Fische in den unteren, Pinguin in den oberen Bits. */
+        @JvmStatic
+        fun encode(fish: Int, penguin: Team?): Byte {
+            require(fish in 0..MAX_FISH) { "Ein Feld kann nicht $fish Fische enthalten" }
+            return (fish or ((penguin?.index?.plus(1) ?: 0) shl PENGUIN_SHIFT)).toByte()
+        }
+        
+        /** @return ob der [code] ein Feld kodiert. */
+        @JvmStatic
+        fun isValid(code: Byte): Boolean = code.toInt() in cache.indices
+        
+        /** @return das unveränderliche Feld zu dem gegebenen [code]. */
+        @JvmStatic
+        fun decode(code: Byte): Field = cache[code.toInt()]
+        
+        /** @return die Anzahl der Fische in dem kodierten Feld. */
+        @JvmStatic
+        fun fishOf(code: Byte): Int = code.toInt() and FISH_MASK
+        
+        /** @return der Index des Teams auf dem kodierten Feld, oder -1 wenn dort kein Pinguin steht. */
+        @JvmStatic
+        fun teamIndexOf(code: Byte): Int = (code.toInt() shr PENGUIN_SHIFT) - 1
+    }
 }
@@ -3,7 +3,6 @@ package sc.plugin2023
 import com.thoughtworks.xstream.annotations.XStreamAlias
 import com.thoughtworks.xstream.annotations.XStreamAsAttribute
 import sc.api.plugins.*
-import sc.api.plugins.Vector.DoubledHex.straight
 import sc.plugin2023.util.PenguinMoveMistake
 import sc.plugin2023.util.PluginConstants
 import sc.shared.MoveMistake
@@ -24,60 +23,105 @@ data class GameState @JvmOverloads constructor(
         /** Der zuletzt gespielte Zug. */
         override var lastMove: Move? = null,
         val fishes: IntArray = IntArray(Team.values().size),
-): TwoPlayerGameState<Move>(Team.ONE) {
+): TwoPlayerGameState<Move>(Team.ONE), IDeltaGameState {
 
     constructor(other: GameState): this(other.board.clone(), other.turn, other.lastMove, other.fishes.clone())
     
     override val currentTeam: Team
         get() = currentTeamFromTurn().run { takeIf { !immovable(it) } ?: opponent() }
     
-    override fun performMove(move: Move) {
+    override fun performMove(move: Move): Long {
+        val team = currentTeam
         if(move.from != null) {
-            if(board[move.from].penguin != currentTeam)
+            if(board[move.from].penguin != team)
                 throw InvalidMoveException(MoveMistake.WRONG_COLOR, move)
-            if(currentPieces.size < PluginConstants.PENGUINS)
+            if(board.penguinCount(team) < PluginConstants.PENGUINS)
                 throw InvalidMoveException(PenguinMoveMistake.PENGUINS, move)
-            if(!move.to.minus(move.from).straight)
-                throw InvalidMoveException(MoveMistake.INVALID_MOVE, move)
-            // TODO avoid this check
-            if(move !in board.possibleMovesFrom(move.from))
+            if(!board.canSlide(move.from, move.to))
                 throw InvalidMoveException(MoveMistake.INVALID_MOVE, move)
             board[move.from] = null
         } else {
-            if(currentPieces.size >= PluginConstants.PENGUINS)
+            if(board.penguinCount(team) >= PluginConstants.PENGUINS)
                 throw InvalidMoveException(PenguinMoveMistake.MAX_PENGUINS, move)
             if(board[move.to].fish != 1)
                 throw InvalidMoveException(PenguinMoveMistake.SINGLE_FISH, move)
         }
-        fishes[currentTeam.index] += board.set(move.to, currentTeam)
+        val fish = board.set(move.to, team)
+        fishes[team.index] += fish
+        val undo = undoToken(fish, lastMove)
         lastMove = move
         turn++
+        return undo
+    }
+    
+    override fun undoMove(move: Move, undo: Long) {
+        require(move == lastMove) { "Nur der zuletzt ausgeführte Zug kann zurückgenommen werden, nicht $move" }
+        val team = board[move.to].penguin
+                   ?: throw IllegalStateException("Kein Pinguin auf ${move.to}")
+        val fish = (undo and FISH_MASK).toInt()
+        fishes[team.index] -= fish
+        board.restore(move.to, fish)
+        if(move.from != null)
+            board[move.from] = team
+        lastMove = if((undo and HAS_LAST_MOVE) != 0L) Move.unpack((undo ushr 32).toInt()) else null
+        turn--
     }
     
     val currentPieces
         get() = board.filterValues { it.penguin == currentTeam }
     
     val penguinsPlaced
-        get() = currentPieces.size == PluginConstants.PENGUINS
+        get() = board.penguinCount(currentTeam) == PluginConstants.PENGUINS
     
     override fun getPossibleMoves(): List<Move> =
-            if(penguinsPlaced) {
-                currentPieces.flatMap { (pos, _) -> board.possibleMovesFrom(pos) }
-            } else {
-                board.filterValues { it.fish == 1 }.map { Move(null, it.key) }
-            }
+            MoveBuffer().also { generateMoves(it) }.toList()
+    
+    /** Schreibt die möglichen Züge des aktuellen Teams gepackt in den [buffer], siehe [Move.pack].
+     * Der Puffer wird vorher geleert und kann so für jede Berechnung wiederverwendet werden.
+     * @return die Anzahl der möglichen Züge */
+    fun generateMoves(buffer: MoveBuffer): Int {
+        buffer.clear()
+        if(penguinsPlaced)
+            board.addMovesOf(currentTeam, buffer)
+        else
+            board.addPlacements(buffer)
+        return buffer.size
+    }
     
     fun canPlacePenguin(pos: Coordinates) = !penguinsPlaced && board[pos].fish == 1
     
-    fun immovable(team: Team? = null) =
-            board.getPenguins()
-                    .filter { team == null || it.second == team }
-                    .takeIf { it.size == PluginConstants.PENGUINS * (if(team == null) Team.values().size else 1) }
-                    ?.all { pair -> pair.first.hexNeighbors.all { board.getOrEmpty(it).fish == 0 } } ?: false
+    /** Ob alle Pinguine des Teams (oder beider Teams) gesetzt sind und sich keiner mehr bewegen kann.
+     * Das Spielbrett zählt die beweglichen Pinguine mit, daher benötigt dies konstante Zeit. */
+    fun immovable(team: Team? = null): Boolean =
+            if(team == null)
+                immovable(Team.ONE) && immovable(Team.TWO)
+            else
+                board.penguinCount(team) == PluginConstants.PENGUINS && board.mobilePenguinCount(team) == 0
     
     override val isOver: Boolean
         get() = immovable()
     
+    /** 64-Bit Zobrist-Schlüssel aus Spielbrett, Zugzahl und Fischen,
+     * etwa für eine [sc.player.TranspositionTable].
+     * Das Spielbrett hält seinen Teil aktuell, sodass der Schlüssel in konstanter Zeit vorliegt. */
+    val zobristKey: Long
+        get() {
+            var key = board.zobristKey xor Zobrist.key(-1, turn)
+            for(index in fishes.indices)
+                key = key xor Zobrist.key(-2 - index, fishes[index])
+            return key
+        }
+    
+    override val checksum: Long
+        get() = zobristKey
+    
+    override fun diff(previous: IGameState): StateDelta? {
+        if(previous !is GameState || previous.board.width != board.width || previous.board.height != board.height)
+            return null
+        return StateDelta(turn, lastMove, board.changesFrom(previous.board),
+                IntArray(fishes.size) { fishes[it] - previous.fishes[it] })
+    }
+    
     /** Berechne die Punkteanzahl für das gegebene Team. */
     override fun getPointsForTeam(team: ITeam): IntArray =
             intArrayOf(fishes[team.index])
@@ -101,12 +145,15 @@ data class GameState @JvmOverloads constructor(
         return true
     }
     
-    override fun hashCode(): Int {
-        var result = board.hashCode()
-        result = 31 * result + turn
-        result = 31 * result + (lastMove?.hashCode() ?: 0)
-        result = 31 * result + fishes.contentHashCode()
-        return result
-    }
+    override fun hashCode(): Int = zobristKey.let { (it xor (it ushr 32)).toInt() }
     
+    companion object {
+        private const val FISH_MASK = 0xFFL
+        private const val HAS_LAST_MOVE = 1L shl 8
+        
+        /** Packt die gefangenen Fische und den vorherigen [lastMove] in ein Token für [undoMove]. */
+        private fun undoToken(fish: Int, lastMove: Move?): Long =
+                fish.toLong() or (lastMove?.let { (it.packed.toLong() shl 32) or HAS_LAST_MOVE } ?: 0L)
+    }
+
 }
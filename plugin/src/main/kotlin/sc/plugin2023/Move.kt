@@ -25,12 +25,54 @@ data class Move(
     override fun toString(): String =
             from?.let { "Schlittern $from zu $to" } ?: "Setze Pinguin auf $to"
     
+    /** Dieser Zug in gepackter Form, siehe [pack]. */
+    val packed: Int
+        get() = from?.let { pack(it.x, it.y, to.x, to.y) } ?: packSet(to.x, to.y)
+    
     companion object {
+        private const val COMPONENT_BITS = 8
+        private const val COMPONENT_MASK = (1 shl COMPONENT_BITS) - 1
+        private const val NO_ORIGIN = 0xFFFF
+        
         @JvmStatic
         fun run(start: Coordinates, delta: Vector): Move =
                 Move(start, (start + delta))
         @JvmStatic
         fun set(position: Coordinates): Move =
                 Move(to = position)
+        
+        /** Packt einen Zug in einen Int, mit je 8 Bit pro Koordinate: Ursprung in den oberen, Ziel in den unteren 16 Bit. */
+        @JvmStatic
+        fun pack(fromX: Int, fromY: Int, toX: Int, toY: Int): Int =
+                (packCoordinates(fromX, fromY) shl 2 * COMPONENT_BITS) or packCoordinates(toX, toY)
+        
+        /** Packt das Setzen eines Pinguins auf die gegebenen Koordinaten, siehe [pack]. */
+        @JvmStatic
+        fun packSet(x: Int, y: Int): Int =
+                (NO_ORIGIN shl 2 * COMPONENT_BITS) or packCoordinates(x, y)
+        
+        private fun packCoordinates(x: Int, y: Int): Int {
+            require(x in 0..COMPONENT_MASK && y in 0..COMPONENT_MASK) { "[$x|$y] kann nicht gepackt werden" }
+            return (x shl COMPONENT_BITS) or y
+        }
+        
+        /** @return ob der gepackte Zug einen Pinguin setzt. */
+        @JvmStatic
+        fun isSet(packed: Int): Boolean = packed ushr 2 * COMPONENT_BITS == NO_ORIGIN
+        
+        @JvmStatic
+        fun fromX(packed: Int): Int = (packed ushr 3 * COMPONENT_BITS) and COMPONENT_MASK
+        @JvmStatic
+        fun fromY(packed: Int): Int = (packed ushr 2 * COMPONENT_BITS) and COMPONENT_MASK
+        @JvmStatic
+        fun toX(packed: Int): Int = (packed ushr COMPONENT_BITS) and COMPONENT_MASK
+        @JvmStatic
+        fun toY(packed: Int): Int = packed and COMPONENT_MASK
+        
+        /** Entpackt einen mit [pack] oder [packSet] gepackten Zug. */
+        @JvmStatic
+        fun unpack(packed: Int): Move =
+                Move(if(isSet(packed)) null else Coordinates(fromX(packed), fromY(packed)),
+                        Coordinates(toX(packed), toY(packed)))
     }
 }
\ No newline at end of file
@@ -0,0 +1,46 @@
+package sc.plugin2023
+
+/**
+ * Ein wiederverwendbarer Puffer für Züge in gepackter Form (siehe [Move.pack]).
+ *
+ * Wird er über mehrere Zugberechnungen hinweg wiederverwendet,
+ * entstehen bei der Berechnung keine neuen Objekte.
+ */
+class MoveBuffer @JvmOverloads constructor(capacity: Int = DEFAULT_CAPACITY) {
+    private var moves = IntArray(capacity)
+    
+    /** Die Anzahl der Züge im Puffer. */
+    var size = 0
+        private set
+    
+    val isEmpty: Boolean
+        get() = size == 0
+    
+    /** Hängt einen gepackten Zug an. */
+    fun add(move: Int) {
+        if(size == moves.size)
+            moves = moves.copyOf(maxOf(DEFAULT_CAPACITY, size * 2))
+        moves[size++] = move
+    }
+    
+    /** @return der gepackte Zug an der gegebenen Stelle. */
+    operator fun get(index: Int): Int {
+        if(index >= size)
+            throw IndexOutOfBoundsException("Index $index, Größe $size")
+        return moves[index]
+    }
+    
+    /** Leert den Puffer, ohne den Speicher freizugeben. */
+    fun clear() {
+        size = 0
+    }
+    
+    /** @return die Züge im Puffer als [Move]-Objekte. */
+    fun toList(): List<Move> = List(size) { Move.unpack(moves[it]) }
+    
+    override fun toString(): String = "MoveBuffer(${toList()})"
+    
+    companion object {
+        const val DEFAULT_CAPACITY = 64
+    }
+}
@@ -0,0 +1,48 @@
+package sc.plugin2023
+
+import com.thoughtworks.xstream.annotations.XStreamAlias
+import com.thoughtworks.xstream.annotations.XStreamAsAttribute
+import sc.api.plugins.IGameState
+import sc.api.plugins.IStateDelta
+
+/**
+ * Die Änderungen zwischen zwei [GameState]s, siehe [GameState.diff].
+ * Statt des ganzen Spielbretts enthält sie nur die veränderten Felder.
+ */
+@XStreamAlias(value = "stateDelta")
+data class StateDelta(
+        /** Die Anzahl an bereits getätigten Zügen im neuen Spielstand. */
+        @XStreamAsAttribute val turn: Int,
+        /** Der zuletzt gespielte Zug im neuen Spielstand. */
+        val lastMove: Move?,
+        /** Die veränderten Felder. */
+        val changed: List<FieldChange>,
+        /** Die hinzugekommenen Fische je Team. */
+        val fishes: IntArray,
+): IStateDelta {
+    
+    override fun applyTo(state: IGameState) {
+        require(state is GameState && state.fishes.size == fishes.size) { "$this passt nicht zu $state" }
+        state.board.apply(changed)
+        fishes.forEachIndexed { index, fish -> state.fishes[index] += fish }
+        state.turn = turn
+        state.lastMove = lastMove
+    }
+    
+    override fun equals(other: Any?): Boolean {
+        if(this === other) return true
+        if(other !is StateDelta) return false
+        return turn == other.turn && lastMove == other.lastMove &&
+               changed == other.changed && fishes.contentEquals(other.fishes)
+    }
+    
+    override fun hashCode(): Int =
+            ((turn * 31 + lastMove.hashCode()) * 31 + changed.hashCode()) * 31 + fishes.contentHashCode()
+}
+
+/** Ein verändertes Feld mit seinem Index im Spielbrett und seiner neuen Kodierung, siehe [Field.code]. */
+@XStreamAlias(value = "change")
+data class FieldChange(
+        @XStreamAsAttribute val index: Int,
+        @XStreamAsAttribute val code: Byte,
+)
@@ -1,14 +1,31 @@
 package sc.plugin2023
 
+import com.thoughtworks.xstream.XStream
 import sc.api.plugins.Coordinates
 import sc.api.plugins.Team
+import sc.networking.BinaryCodec
 import sc.networking.XStreamProvider
+import sc.plugin2023.util.BoardCodec
+import sc.plugin2023.util.BoardConverter
+import sc.plugin2023.util.GameStateCodec
+import sc.plugin2023.util.MoveCodec
+import sc.plugin2023.util.StateDeltaCodec
 
 class XStreamClasses: XStreamProvider {
     
     override val classesToRegister =
             listOf(
-                    Board::class.java, Coordinates::class.java, GameState::class.java,
-                    Move::class.java, Team::class.java)
+                    Board::class.java, Coordinates::class.java, Field::class.java, GameState::class.java,
+                    Move::class.java, Team::class.java, StateDelta::class.java, FieldChange::class.java)
     
+    override val binaryCodecs: List<BinaryCodec<*>> =
+            listOf(BoardCodec, GameStateCodec, MoveCodec, StateDeltaCodec)
+
+    /** Schreibt Spielbretter kompakt, wenn [XStreamProvider.compactXml] gesetzt ist,
+     * siehe [BoardConverter]. Standardmäßig bleibt das bisherige Format, das alle Clients lesen können. */
+    override fun setup(xStream: XStream) {
+        if(XStreamProvider.compactXml)
+            xStream.registerConverter(BoardConverter(compact = true), XStream.PRIORITY_VERY_HIGH)
+    }
+
 }
\ No newline at end of file
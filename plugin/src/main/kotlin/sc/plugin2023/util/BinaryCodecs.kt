@@ -0,0 +1,96 @@
+package sc.plugin2023.util
+
+import sc.api.plugins.Team
+import sc.networking.BinaryCodec
+import sc.networking.BinaryInput
+import sc.networking.BinaryOutput
+import sc.plugin2023.Board
+import sc.plugin2023.FieldChange
+import sc.plugin2023.GameState
+import sc.plugin2023.Move
+import sc.plugin2023.StateDelta
+import java.net.ProtocolException
+
+/** Schreibt das [Board] als Breite und Höhe, gefolgt von einem Byte je Feld, siehe [Board.codes]. */
+object BoardCodec: BinaryCodec<Board> {
+    /** Größer können die Koordinaten eines Zugs nicht gepackt werden, siehe [Move.pack]. */
+    private const val MAX_SIZE = 128
+    
+    override val type = Board::class.java
+    
+    override fun write(value: Board, output: BinaryOutput) {
+        output.writeVarint(value.width)
+        output.writeVarint(value.height)
+        output.writeBytes(value.codes())
+    }
+    
+    override fun read(input: BinaryInput): Board {
+        val width = input.readVarint()
+        val height = input.readVarint()
+        if(width !in 0..MAX_SIZE || height !in 0..MAX_SIZE)
+            throw ProtocolException("Spielbrett mit $width x $height Feldern")
+        return try {
+            Board.fromCodes(width, height, input.readBytes(width * height))
+        } catch(e: IllegalArgumentException) {
+            throw ProtocolException(e.message)
+        }
+    }
+}
+
+/** Schreibt einen [Move] gepackt als varint, siehe [Move.packed]. */
+object MoveCodec: BinaryCodec<Move> {
+    override val type = Move::class.java
+    
+    override fun write(value: Move, output: BinaryOutput) =
+            output.writeVarint(value.packed)
+    
+    override fun read(input: BinaryInput): Move =
+            Move.unpack(input.readVarint())
+}
+
+/** Schreibt den [GameState] mit gepacktem [Board] und [Move]. */
+object GameStateCodec: BinaryCodec<GameState> {
+    override val type = GameState::class.java
+    
+    override fun write(value: GameState, output: BinaryOutput) {
+        output.writeValue(value.board)
+        output.writeVarint(value.turn)
+        output.writeValue(value.lastMove)
+        value.fishes.forEach { output.writeVarint(it) }
+    }
+    
+    override fun read(input: BinaryInput): GameState {
+        val board = input.read(Board::class.java)
+        val turn = input.readVarint()
+        val lastMove = input.readNullable(Move::class.java)
+        val fishes = IntArray(Team.values().size) { input.readVarint() }
+        return GameState(board, turn, lastMove, fishes)
+    }
+}
+
+/** Schreibt die [StateDelta] mit den veränderten Feldern als Index und Kodierung. */
+object StateDeltaCodec: BinaryCodec<StateDelta> {
+    override val type = StateDelta::class.java
+    
+    override fun write(value: StateDelta, output: BinaryOutput) {
+        output.writeVarint(value.turn)
+        output.writeValue(value.lastMove)
+        output.writeVarint(value.changed.size)
+        value.changed.forEach {
+            output.writeVarint(it.index)
+            output.writeByte(it.code.toInt())
+        }
+        value.fishes.forEach { output.writeVarint(it) }
+    }
+    
+    override fun read(input: BinaryInput): StateDelta {
+        val turn = input.readVarint()
+        val lastMove = input.readNullable(Move::class.java)
+        val count = input.readVarint()
+        if(count < 0 || count > input.remaining)
+            throw ProtocolException("$count veränderte Felder")
+        val changed = List(count) { FieldChange(input.readVarint(), input.readByte().toByte()) }
+        val fishes = IntArray(Team.values().size) { input.readVarint() }
+        return StateDelta(turn, lastMove, changed, fishes)
+    }
+}
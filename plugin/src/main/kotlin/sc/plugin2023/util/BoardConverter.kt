@@ -0,0 +1,83 @@
+package sc.plugin2023.util
+
+import com.thoughtworks.xstream.converters.ConversionException
+import com.thoughtworks.xstream.converters.Converter
+import com.thoughtworks.xstream.converters.MarshallingContext
+import com.thoughtworks.xstream.converters.UnmarshallingContext
+import com.thoughtworks.xstream.io.HierarchicalStreamReader
+import com.thoughtworks.xstream.io.HierarchicalStreamWriter
+import sc.api.plugins.Team
+import sc.plugin2023.Board
+import sc.plugin2023.Field
+
+/**
+ * Schreibt das [Board] zeilenweise als Listen von [Field]s, wie zuvor über die Felder des [sc.api.plugins.RectangularBoard].
+ *
+ * Mit [compact] wird stattdessen das ganze Spielbrett als ein Text geschrieben,
+ * mit einem Zeichen je Feld (Anzahl der Fische oder Buchstabe des Pinguins, siehe [Field.toString])
+ * und Leerzeichen zwischen den Zeilen, etwa `<board>1204 30R1</board>`.
+ * Hat ein Feld mehr als 9 Fische oder einen Pinguin auf Fischen,
+ * wird das Spielbrett weiter als Listen geschrieben.
+ * Gelesen werden immer beide Formate.
+ */
+class BoardConverter @JvmOverloads constructor(private val compact: Boolean = false): Converter {
+    override fun canConvert(type: Class<*>?): Boolean = type == Board::class.java
+    
+    override fun marshal(source: Any, writer: HierarchicalStreamWriter, context: MarshallingContext) {
+        val board = source as Board
+        if(compact && board.all { it.fish <= MAX_COMPACT_FISH && (it.penguin == null || it.fish == 0) }) {
+            writer.setValue(board.rows().joinToString(separator = " ") { row -> row.joinToString(separator = "") })
+            return
+        }
+        board.rows().forEach { row ->
+            writer.startNode("list")
+            row.forEach { field ->
+                writer.startNode("field")
+                context.convertAnother(field)
+                writer.endNode()
+            }
+            writer.endNode()
+        }
+    }
+    
+    override fun unmarshal(reader: HierarchicalStreamReader, context: UnmarshallingContext): Board {
+        if(!reader.hasMoreChildren())
+            return readCompact(reader.value.orEmpty())
+        val rows = ArrayList<MutableList<Field>>()
+        while(reader.hasMoreChildren()) {
+            reader.moveDown()
+            val row = ArrayList<Field>()
+            while(reader.hasMoreChildren()) {
+                reader.moveDown()
+                row.add(context.convertAnother(rows, Field::class.java) as Field)
+                reader.moveUp()
+            }
+            rows.add(row)
+            reader.moveUp()
+        }
+        return Board(rows)
+    }
+    
+    private fun readCompact(value: String): Board {
+        val rows = value.trim().split(' ').filter { it.isNotEmpty() }
+        val width = rows.firstOrNull()?.length ?: 0
+        val codes = ByteArray(rows.size * width)
+        rows.forEachIndexed { y, row ->
+            if(row.length != width)
+                throw ConversionException("Zeile $y des Spielbretts hat ${row.length} statt $width Felder")
+            row.forEachIndexed { x, char ->
+                codes[y * width + x] = when {
+                    char in '0'..'9' -> Field.encode(char - '0', null)
+                    else -> Field.encode(0, teams[char] ?: throw ConversionException("Unbekanntes Feld '$char'"))
+                }
+            }
+        }
+        return Board.fromCodes(width, rows.size, codes)
+    }
+    
+    companion object {
+        private const val MAX_COMPACT_FISH = 9
+        
+        private val teams = Team.values().associateBy { it.letter }
+    }
+}
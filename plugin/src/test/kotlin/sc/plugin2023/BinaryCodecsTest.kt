@@ -0,0 +1,55 @@
+package sc.plugin2023
+
+import io.kotest.assertions.throwables.shouldThrow
+import io.kotest.core.spec.style.FunSpec
+import io.kotest.matchers.ints.shouldBeLessThan
+import io.kotest.matchers.shouldBe
+import sc.api.plugins.Coordinates
+import sc.helpers.testXStream
+import sc.networking.XStreamProvider
+import sc.protocol.room.DeltaMessage
+import sc.protocol.room.MementoMessage
+import sc.protocol.room.RoomPacket
+import java.net.ProtocolException
+
+class BinaryCodecsTest: FunSpec({
+    val protocol = XStreamProvider.loadBinaryProtocol(XStreamProvider.loadPluginXStream())
+    /** Entfernt die Länge vom Anfang eines Frames. */
+    fun ByteArray.content() = copyOfRange(if(this[0] < 0) 2 else 1, size)
+    
+    test("memento round-trips") {
+        val state = GameState()
+        repeat(3) { state.performMove(state.getPossibleMoves().first()) }
+        val packet = RoomPacket("room", MementoMessage(state, null))
+        val frame = protocol.encode(packet)
+        val decoded = protocol.decode(frame.content())
+        decoded shouldBe packet
+        (((decoded as RoomPacket).data as MementoMessage).state as GameState).run {
+            turn shouldBe 3
+            lastMove shouldBe state.lastMove
+            fishes.toList() shouldBe state.fishes.toList()
+        }
+        frame.size shouldBeLessThan testXStream.toXML(packet).length / 10
+    }
+    test("moves round-trip") {
+        listOf(Move.set(Coordinates(3, 5)), Move(Coordinates(0, 7), Coordinates(17, 5))).forEach { move ->
+            val packet = RoomPacket("room", move)
+            protocol.decode(protocol.encode(packet).content()) shouldBe packet
+        }
+    }
+    test("deltas round-trip") {
+        val previous = GameState()
+        val state = previous.clone()
+        repeat(3) { state.performMove(state.getPossibleMoves().first()) }
+        val packet = RoomPacket("room", DeltaMessage(state.diff(previous)!!, state.checksum))
+        val frame = protocol.encode(packet)
+        protocol.decode(frame.content()) shouldBe packet
+        frame.size shouldBeLessThan protocol.encode(RoomPacket("room", MementoMessage(state, null))).size / 5
+    }
+    test("rejects invalid boards") {
+        val frame = protocol.encode(RoomPacket("room", MementoMessage(GameState(), null))).content()
+        // erstes Feld des Spielbretts hinter Raum, Tags und Größe
+        frame["room".length + 7] = 127
+        shouldThrow<ProtocolException> { protocol.decode(frame) }
+    }
+})
@@ -1,17 +1,23 @@
 package sc.plugin2023
 
+import com.thoughtworks.xstream.XStream
+import io.kotest.assertions.throwables.shouldThrow
 import io.kotest.core.spec.style.FunSpec
 import io.kotest.inspectors.forAll
 import io.kotest.matchers.*
+import io.kotest.matchers.booleans.*
 import io.kotest.matchers.collections.*
 import io.kotest.matchers.ints.*
 import io.kotest.matchers.maps.shouldHaveSize
 import io.kotest.matchers.nulls.*
 import io.kotest.matchers.string.*
+import io.kotest.matchers.types.shouldBeSameInstanceAs
 import sc.api.plugins.Coordinates
 import sc.api.plugins.Team
 import sc.helpers.shouldSerializeTo
 import sc.helpers.testXStream
+import sc.networking.XStreamProvider
+import sc.plugin2023.util.BoardConverter
 import sc.plugin2023.util.PluginConstants
 
 class BoardTest: FunSpec({
@@ -47,6 +53,29 @@ class BoardTest: FunSpec({
             clone.getPenguins() shouldHaveSize 1
             clone shouldBe makeBoard(0 y 0 to 1)
         }
+        test("shares immutable fields") {
+            val board = makeBoard(0 y 0 to 1)
+            board[0 y 0] shouldBeSameInstanceAs board.clone()[0 y 0]
+            board[2 y 0] shouldBeSameInstanceAs board[4 y 0]
+            board.fishAt(2, 0) shouldBe 1
+            board.fishAt(0, 0) shouldBe 0
+            board.fishAt(-2, 0) shouldBe 0
+        }
+        test("answers map and collection lookups from its own fields") {
+            val board = makeBoard(0 y 0 to 0)
+            board.isObstructed(0 y 0).shouldBeTrue()
+            board.isObstructed(2 y 0).shouldBeFalse()
+            board.containsKey(2 y 0).shouldBeTrue()
+            board.containsKey(1 y 0).shouldBeFalse()
+            shouldThrow<IllegalArgumentException> { board[-2 y 0] }
+            board.fieldsEmpty().shouldBeFalse()
+            
+            board.iterator().asSequence().toList() shouldBe board.rows().flatten()
+            board.entries shouldHaveSize PluginConstants.BOARD_SIZE * PluginConstants.BOARD_SIZE
+            board.entries.single { it.value.penguin != null }.key shouldBe (0 y 0)
+            board.containsAll(listOf(Field(1), Field(penguin = Team.ONE))).shouldBeTrue()
+            board.contains(Field(penguin = Team.TWO)).shouldBeFalse()
+        }
     }
     context("Board calculates Moves") {
         val board = makeBoard(0 y 0 to 0)
@@ -58,6 +87,21 @@ class BoardTest: FunSpec({
             board[1 y 1] = Team.ONE
             board.possibleMovesFrom(0 y 0) shouldHaveSize PluginConstants.BOARD_SIZE - 1
         }
+        test("tracks mobile penguins") {
+            val corner = makeBoard(0 y 0 to 0)
+            corner.penguinCount(Team.ONE) shouldBe 1
+            corner.mobilePenguinCount(Team.ONE) shouldBe 1
+            corner[2 y 0] = Team.TWO
+            corner.mobilePenguinCount(Team.ONE) shouldBe 1
+            corner[1 y 1] = null
+            corner.mobilePenguinCount(Team.ONE) shouldBe 0
+            corner.mobilePenguinCount(Team.TWO) shouldBe 1
+            corner.restore(1 y 1, 2)
+            corner.mobilePenguinCount(Team.ONE) shouldBe 1
+            corner[0 y 0] = null
+            corner.penguinCount(Team.ONE) shouldBe 0
+            corner.mobilePenguinCount(Team.ONE) shouldBe 0
+        }
     }
     context("Board calculates diffs") {
         // TODO
@@ -99,6 +143,18 @@ class BoardTest: FunSpec({
             testXStream.fromXML("<board><list>$fieldTwo</list>") shouldBe Board(listOf(mutableListOf(Field(penguin = Team.TWO))))
             testXStream.toXML(makeBoard(0 y 0 to 1)) shouldContainOnlyOnce fieldTwo
         }
+        test("compact Board") {
+            val compactXStream = XStreamProvider.loadPluginXStream().apply {
+                registerConverter(BoardConverter(compact = true), XStream.PRIORITY_VERY_HIGH)
+            }
+            val board = makeBoard(0 y 0 to 1)
+            val xml = compactXStream.toXML(board)
+            xml shouldBe "<board>B1111111 ${List(PluginConstants.BOARD_SIZE - 1) { "11111111" }.joinToString(" ")}</board>"
+            compactXStream.fromXML(xml) shouldBe board
+            testXStream.fromXML(xml) shouldBe board
+            compactXStream.fromXML(testXStream.toXML(board)) shouldBe board
+            compactXStream.fromXML("<board/>") shouldBe Board(emptyList())
+        }
     }
 })
 
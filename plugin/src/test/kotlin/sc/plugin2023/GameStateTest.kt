@@ -1,15 +1,20 @@
 package sc.plugin2023
 
+import io.kotest.assertions.throwables.shouldThrow
 import io.kotest.core.datatest.forAll
 import io.kotest.core.spec.style.FunSpec
 import io.kotest.matchers.*
 import io.kotest.matchers.booleans.*
 import io.kotest.matchers.collections.*
+import io.kotest.matchers.ints.shouldBeLessThan
+import io.kotest.matchers.nulls.*
 import io.kotest.matchers.string.*
 import sc.api.plugins.Team
 import sc.helpers.shouldSerializeTo
 import sc.helpers.testXStream
 import sc.plugin2023.util.PluginConstants
+import sc.shared.InvalidMoveException
+import sc.shared.MoveMistake
 
 class GameStateTest: FunSpec({
     context("XML Serialization") {
@@ -54,6 +59,44 @@ class GameStateTest: FunSpec({
             //state60.isOver shouldBe true
         }
     }
+    context("undoing moves") {
+        test("restores every previous state") {
+            val state = GameState()
+            val history = ArrayList<Triple<GameState, Move, Long>>()
+            while(!state.isOver) {
+                val before = state.clone()
+                val move = state.getPossibleMoves().random()
+                history.add(Triple(before, move, state.performMove(move)))
+                state.zobristKey shouldNotBe before.zobristKey
+                state.board.zobristKey shouldBe Board(state.board.rows().map { it.toMutableList() }).zobristKey
+            }
+            history.asReversed().forEach { (before, move, undo) ->
+                state.undoMove(move, undo)
+                state shouldBe before
+                state.zobristKey shouldBe before.zobristKey
+            }
+        }
+    }
+    context("move validation") {
+        val state = GameState(makeBoard(
+                0 y 0 to 0, 4 y 0 to 0, 6 y 0 to 0, 8 y 0 to 0,
+                1 y 7 to 1, 3 y 7 to 1, 5 y 7 to 1, 7 y 7 to 1))
+        test("rejects crooked and blocked slides") {
+            listOf(Move(0 y 0, 3 y 0), Move(0 y 0, 6 y 0), Move(0 y 0, 7 y 7), Move(0 y 0, 0 y 0)).forEach {
+                shouldThrow<InvalidMoveException> { state.clone().performMove(it) }.mistake shouldBe MoveMistake.INVALID_MOVE
+            }
+        }
+        test("accepts free slides") {
+            listOf(Move(0 y 0, 2 y 0), Move(0 y 0, 6 y 6)).forEach {
+                state.clone().performMove(it)
+            }
+        }
+        test("rejects foreign penguins") {
+            shouldThrow<InvalidMoveException> {
+                state.clone().performMove(Move(1 y 7, 0 y 6))
+            }.mistake shouldBe MoveMistake.WRONG_COLOR
+        }
+    }
     context("move calculation") {
         test("initial placement") {
             forAll(Board(), makeBoard()) { board ->
@@ -64,6 +107,13 @@ class GameStateTest: FunSpec({
             // Board with max penguins for one player
             GameState(makeBoard(*Array(PluginConstants.PENGUINS) { it y it to 0 })).getPossibleMoves() shouldHaveAtLeastSize PluginConstants.PENGUINS * 2
         }
+        test("buffered moves") {
+            val buffer = MoveBuffer(1)
+            val state = GameState(makeBoard(*Array(PluginConstants.PENGUINS) { it y it to 0 }))
+            state.generateMoves(buffer) shouldBe state.getPossibleMoves().size
+            buffer.toList() shouldBe state.getPossibleMoves()
+            GameState(makeBoard()).generateMoves(buffer) shouldBe PluginConstants.BOARD_SIZE * PluginConstants.BOARD_SIZE
+        }
         test("immovable") {
             // Board with max penguins for both players
             val state = GameState(Board(listOf(
@@ -75,4 +125,27 @@ class GameStateTest: FunSpec({
             state.currentTeam shouldBe Team.TWO
         }
     }
-})
\ No newline at end of file
+    context("Deltas") {
+        val previous = GameState()
+        val state = previous.clone()
+        repeat(3) { state.performMove(state.getPossibleMoves().first()) }
+        test("reproduce the state") {
+            val delta = state.diff(previous).shouldNotBeNull()
+            delta.changed shouldHaveSize 3
+            val copy = previous.clone()
+            delta.applyTo(copy)
+            copy shouldBe state
+            copy.checksum shouldBe state.checksum
+        }
+        test("are much smaller than the state") {
+            testXStream.toXML(state.diff(previous)).length shouldBeLessThan testXStream.toXML(state).length / 5
+        }
+        test("round-trip through XML") {
+            val delta = state.diff(previous)
+            testXStream.fromXML(testXStream.toXML(delta)) shouldBe delta
+        }
+        test("are not created for different boards") {
+            state.diff(GameState(Board(listOf(mutableListOf(Field()))))).shouldBeNull()
+        }
+    }
+})
@@ -22,6 +22,17 @@ class MoveTest: FunSpec({
             Move(null, Coordinates.origin).reversed().shouldBeNull()
         }
     }
+    context("Move packing") {
+        test("slide round-trips") {
+            Move.unpack(move.packed) shouldBe move
+            Move.isSet(move.packed) shouldBe false
+        }
+        test("placement round-trips") {
+            val placement = Move.set(3 y 5)
+            Move.unpack(placement.packed) shouldBe placement
+            Move.isSet(placement.packed) shouldBe true
+        }
+    }
     test("Move XML") {
         RoomPacket("hi", move) shouldSerializeTo """
                 <room roomId="hi">
@@ -0,0 +1,70 @@
+package sc.plugin2023
+
+import io.kotest.core.spec.style.FunSpec
+import io.kotest.inspectors.forAll
+import io.kotest.matchers.booleans.*
+import io.kotest.matchers.collections.shouldHaveSize
+import io.kotest.matchers.nulls.shouldNotBeNull
+import io.kotest.matchers.shouldBe
+import sc.api.plugins.Coordinates
+import sc.api.plugins.IGameState
+import sc.api.plugins.IMove
+import sc.api.plugins.Team
+import sc.player.IGameHandler
+import sc.player.SelfPlay
+import sc.shared.GameResult
+import sc.shared.ScoreCause
+
+class SelfPlayTest: FunSpec({
+    open class RandomHandler: IGameHandler {
+        lateinit var state: GameState
+        var result: GameResult? = null
+        val errors = ArrayList<String>()
+        
+        override fun onUpdate(gameState: IGameState) {
+            state = gameState as GameState
+        }
+        
+        override fun calculateMove(): IMove = state.getPossibleMoves().random()
+        
+        override fun onGameOver(data: GameResult) {
+            result = data
+        }
+        
+        override fun onError(error: String) {
+            errors.add(error)
+        }
+    }
+    
+    test("plays games in parallel") {
+        val handlers = ArrayList<RandomHandler>()
+        val results = SelfPlay().playAll(8) {
+            val pair = RandomHandler() to RandomHandler()
+            synchronized(handlers) { handlers.add(pair.first); handlers.add(pair.second) }
+            pair
+        }
+        results shouldHaveSize 8
+        results.forAll { it.isRegular.shouldBeTrue() }
+        handlers.forAll {
+            it.result.shouldNotBeNull()
+            it.state.isOver.shouldBeTrue()
+            it.errors shouldHaveSize 0
+        }
+    }
+    test("hands out copies of the state") {
+        val first = RandomHandler()
+        val second = RandomHandler()
+        SelfPlay().play(first, second)
+        (first.state === second.state).shouldBeFalse()
+        first.state shouldBe second.state
+    }
+    test("ends the game on an invalid move") {
+        val cheater = object: RandomHandler() {
+            override fun calculateMove(): IMove = Move(Coordinates(0, 0), Coordinates(0, 0))
+        }
+        val result = SelfPlay().play(RandomHandler(), cheater)
+        result.winner shouldBe Team.ONE
+        result.scores.values.last().cause shouldBe ScoreCause.RULE_VIOLATION
+        cheater.errors shouldHaveSize 1
+    }
+})
@@ -37,7 +37,7 @@ class PlayerClient(
     }
     
     override fun joinGameWithReservation(reservation: String) {
-        client.send(JoinPreparedRoomRequest(reservation))
+        client.send(JoinPreparedRoomRequest(reservation, client.encoding, client.isDeltaMementos.takeIf { it }))
     }
     
     override fun joinGameRoom(roomId: String) {
@@ -46,6 +46,6 @@ class PlayerClient(
     
     /** Join any game with the appropriate [gameType]. */
     override fun joinGame(gameType: String?) {
-        client.send(JoinGameRequest(gameType))
+        client.send(JoinGameRequest(gameType, client.encoding, client.isDeltaMementos.takeIf { it }))
     }
 }
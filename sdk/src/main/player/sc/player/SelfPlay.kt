@@ -0,0 +1,102 @@
+package sc.player
+
+import org.slf4j.LoggerFactory
+import sc.api.plugins.IGamePlugin
+import sc.api.plugins.IGameState
+import sc.api.plugins.exceptions.GameLogicException
+import sc.api.plugins.host.IGameListener
+import sc.api.plugins.host.IPlayerListener
+import sc.framework.plugins.Player
+import sc.protocol.room.ErrorMessage
+import sc.protocol.room.MoveRequest
+import sc.shared.GameResult
+import sc.shared.InvalidMoveException
+import sc.shared.PlayerScore
+import java.util.concurrent.Callable
+import java.util.concurrent.ForkJoinPool
+
+/**
+ * Spielt Partien zwischen zwei [IGameHandler]n direkt im eigenen Prozess,
+ * ohne Server, Netzwerk und Serialisierung.
+ *
+ * Jede Partie läuft vollständig auf einem Thread des [pool]s,
+ * mehrere Partien über [playAll] parallel.
+ * Die Logiken erhalten wie über das Netzwerk eine eigene Kopie jedes Spielstands,
+ * ungültige Züge und Fehler beenden die Partie wie auf dem Server.
+ * Zeitbegrenzungen gibt es nicht, sodass auch langsame Logiken nicht disqualifiziert werden
+ * und kein Timer-Thread nebenläufig in die Partie eingreift.
+ */
+class SelfPlay @JvmOverloads constructor(
+        private val plugin: IGamePlugin = IGamePlugin.loadPlugin(),
+        private val pool: ForkJoinPool = ForkJoinPool.commonPool(),
+) {
+    
+    /** Spielt eine Partie, [first] beginnt.
+     * @return das Ergebnis, das auch die Logiken über [IGameHandler.onGameOver] erhalten */
+    fun play(first: IGameHandler, second: IGameHandler): GameResult {
+        val game = plugin.createGame()
+        val handlers = listOf(first, second)
+        val players = handlers.map { game.onPlayerJoined() }
+        
+        var requested: Player? = null
+        players.forEach { player ->
+            player.canTimeout = false
+            player.addPlayerListener(IPlayerListener { message ->
+                when(message) {
+                    is MoveRequest -> requested = player
+                    is ErrorMessage -> handlers[players.indexOf(player)].onError(message.logMessage)
+                }
+            })
+        }
+        var scores: Map<Player, PlayerScore>? = null
+        game.addGameListener(object: IGameListener {
+            override fun onGameOver(results: Map<Player, PlayerScore>) {
+                scores = results
+            }
+            
+            override fun onStateChanged(data: IGameState, observersOnly: Boolean) {
+                if(!observersOnly)
+                    handlers.forEach { it.onUpdate(data.clone()) }
+            }
+        })
+        
+        game.start()
+        // Züge werden hier statt im Listener ausgeführt, damit der Stack nicht mit jedem Zug wächst
+        while(scores == null) {
+            val player = requested ?: throw IllegalStateException("$game wartet auf keinen Zug, ist aber nicht beendet")
+            requested = null
+            val move = handlers[players.indexOf(player)].calculateMove()
+            try {
+                game.onAction(player, move)
+            } catch(e: InvalidMoveException) {
+                reject(player, ErrorMessage(move, "Ungueltiger Zug von '${player.displayName}'.\n$e"), e)
+                game.stop()
+            } catch(e: GameLogicException) {
+                reject(player, ErrorMessage(move, e.message ?: e.toString()), e)
+                game.stop()
+            }
+        }
+        
+        val result = GameResult(plugin.scoreDefinition, scores!!, game.winner)
+        handlers.forEach { it.onGameOver(result) }
+        return result
+    }
+    
+    /** Spielt [games] Partien parallel auf dem [pool].
+     * @param handlers erzeugt für die Nummer einer Partie die beiden Logiken, die erste beginnt
+     * @return die Ergebnisse in der Reihenfolge der Partien */
+    fun playAll(games: Int, handlers: (Int) -> Pair<IGameHandler, IGameHandler>): List<GameResult> =
+            (0 until games).map { index ->
+                pool.submit(Callable { handlers(index).let { play(it.first, it.second) } })
+            }.map { it.join() }
+    
+    private fun reject(player: Player, error: ErrorMessage, cause: Exception) {
+        logger.warn(error.message, cause)
+        player.violationReason = cause.message
+        player.notifyListeners(error)
+    }
+    
+    companion object {
+        private val logger = LoggerFactory.getLogger(SelfPlay::class.java)
+    }
+}
@@ -0,0 +1,70 @@
+package sc.player
+
+/**
+ * Eine Hashtabelle fester Größe für bereits bewertete Spielstände,
+ * adressiert über deren 64-Bit Schlüssel (etwa einen Zobrist-Schlüssel).
+ *
+ * Jeder Eintrag besteht aus einem frei belegbaren 64-Bit Wert,
+ * den die Logik etwa aus Bewertung, Suchtiefe und bestem Zug packen kann.
+ * Bei Kollisionen wird der vorhandene Eintrag überschrieben.
+ *
+ * Die Tabelle kann ohne Sperren von mehreren Threads gleichzeitig genutzt werden:
+ * Neben dem Wert wird dessen XOR-Verknüpfung mit dem Schlüssel gespeichert,
+ * sodass ein durch gleichzeitiges Schreiben beschädigter Eintrag als fehlend gilt.
+ *
+ * @param capacity Mindestanzahl an Einträgen, wird auf eine Zweierpotenz aufgerundet
+ */
+class TranspositionTable(capacity: Int) {
+    /** Die tatsächliche Anzahl an Einträgen. */
+    val capacity: Int
+    
+    private val mask: Int
+    
+    /** Abwechselnd Prüfwert (Schlüssel XOR Wert) und Wert je Eintrag. */
+    private val entries: LongArray
+    
+    init {
+        require(capacity in 1..MAX_CAPACITY) { "Kapazität muss zwischen 1 und $MAX_CAPACITY liegen, nicht $capacity" }
+        this.capacity = if(capacity == 1) 1 else Integer.highestOneBit(capacity - 1) shl 1
+        mask = this.capacity - 1
+        entries = LongArray(this.capacity * 2)
+        clear()
+    }
+    
+    /** @return den gespeicherten Wert zum [key] oder [MISSING], falls keiner vorhanden ist. */
+    operator fun get(key: Long): Long {
+        val index = index(key)
+        val check = entries[index]
+        val value = entries[index + 1]
+        return if(value != MISSING && check xor value == key) value else MISSING
+    }
+    
+    /** Speichert den [value] zum [key] und verdrängt dabei den bisherigen Eintrag an dieser Stelle. */
+    operator fun set(key: Long, value: Long) {
+        require(value != MISSING) { "$MISSING kann nicht gespeichert werden" }
+        val index = index(key)
+        entries[index] = key xor value
+        entries[index + 1] = value
+    }
+    
+    /** Entfernt alle Einträge. */
+    fun clear() {
+        for(index in entries.indices step 2) {
+            entries[index] = 0
+            entries[index + 1] = MISSING
+        }
+    }
+    
+    private fun index(key: Long): Int =
+            ((key xor (key ushr 32)).toInt() and mask) shl 1
+    
+    override fun toString() = "TranspositionTable(capacity=$capacity)"
+    
+    companion object {
+        /** Markiert einen fehlenden Eintrag und kann daher nicht als Wert gespeichert werden. */
+        const val MISSING = Long.MIN_VALUE
+        
+        /** Die größtmögliche Kapazität einer Tabelle. */
+        const val MAX_CAPACITY = 1 shl 29
+    }
+}
@@ -37,11 +37,61 @@ data class Coordinates(
     fun fromDoubledHex() = Coordinates(x / 2, y)
     fun toDoubledHex() = doubledHex(x, y)
     
+    /** Diese Koordinaten als einzelner Int, siehe [pack]. */
+    val packed: Int
+        get() = pack(x, y)
+    
     companion object {
         /** Der Ursprung des Koordinatensystems (0, 0). */
         val origin = Coordinates(0, 0)
         
         fun doubledHex(x: Int, y: Int) = Coordinates(x * 2 + y % 2, y)
+        
+        /** Packt die Koordinaten in einen Int: x in den oberen, y in den unteren 16 Bit (jeweils mit Vorzeichen).
+         * In Kotlin bietet [PackedCoordinates] dafür eine typsichere Hülle ohne Objekterzeugung. */
+        @JvmStatic
+        fun pack(x: Int, y: Int): Int =
+                (x shl 16) or (y and 0xFFFF)
+        
+        /** @return die x-Koordinate gepackter Koordinaten, siehe [pack]. */
+        @JvmStatic
+        fun packedX(packed: Int): Int = packed shr 16
+        
+        /** @return die y-Koordinate gepackter Koordinaten, siehe [pack]. */
+        @JvmStatic
+        fun packedY(packed: Int): Int = packed.toShort().toInt()
+        
+        /** Erzeugt wieder ein [Coordinates]-Objekt aus gepackten Koordinaten. */
+        @JvmStatic
+        fun unpack(packed: Int): Coordinates = Coordinates(packedX(packed), packedY(packed))
+    }
+}
+
+/**
+ * In einen Int gepackte [Coordinates] (siehe [Coordinates.pack]).
+ * Als Inline-Klasse erzeugt sie auf heißen Pfaden keine Objekte.
+ * Aus Java sind die statischen Funktionen in [Coordinates] zu verwenden.
+ */
+@JvmInline
+value class PackedCoordinates(val packed: Int) {
+    val x: Int
+        get() = Coordinates.packedX(packed)
+    val y: Int
+        get() = Coordinates.packedY(packed)
+    
+    /** Verschiebt die Koordinaten um die gegebene Differenz. */
+    fun plus(dx: Int, dy: Int): PackedCoordinates = of(x + dx, y + dy)
+    
+    /** Addiere den [Vector] auf die Koordinaten auf. */
+    operator fun plus(vector: Vector): PackedCoordinates = plus(vector.dx, vector.dy)
+    
+    fun toCoordinates(): Coordinates = Coordinates.unpack(packed)
+    
+    override fun toString(): String = "[$x|$y]"
+    
+    companion object {
+        fun of(x: Int, y: Int) = PackedCoordinates(Coordinates.pack(x, y))
+        fun of(coordinates: Coordinates) = PackedCoordinates(coordinates.packed)
     }
 }
 
@@ -0,0 +1,130 @@
+package sc.api.plugins
+
+import java.util.concurrent.ConcurrentHashMap
+import kotlin.math.abs
+
+/**
+ * Vorberechnete Tabellen für ein rechteckiges Spielbrett in Doubled-Hex-Koordinaten
+ * mit [width] Feldern pro Zeile und [height] Zeilen.
+ *
+ * Die Felder werden zeilenweise über ihren Index angesprochen,
+ * die Richtungen über ihren Index in [Vector.DoubledHex.directions].
+ * Nachbarn und Strahlen (alle Felder in einer Richtung bis zum Rand) sind für jedes Feld hinterlegt,
+ * sodass beim Durchlaufen keine [Coordinates] oder [Vector]en berechnet werden müssen.
+ *
+ * Instanzen sind unveränderlich und werden über [of] je Größe geteilt.
+ */
+class DoubledHexGrid private constructor(val width: Int, val height: Int) {
+    /** Die Anzahl der Felder. */
+    val size = width * height
+    
+    /** Gepackte Koordinaten je Feld, siehe [Coordinates.pack]. */
+    private val coordinates = IntArray(size) { index ->
+        Coordinates.pack(index % width * 2 + index / width % 2, index / width)
+    }
+    
+    /** Die Strahlen aller Felder hintereinander, je Feld und Richtung bis zum Rand. */
+    private val rayTargets: IntArray
+    
+    /** Beginn des Strahls je Feld und Richtung in [rayTargets], mit abschließendem Ende. */
+    private val rayOffsets = IntArray(size * DIRECTIONS + 1)
+    
+    init {
+        val targets = ArrayList<Int>()
+        for(index in 0 until size) {
+            for(direction in 0 until DIRECTIONS) {
+                rayOffsets[index * DIRECTIONS + direction] = targets.size
+                val vector = Vector.DoubledHex.directions[direction]
+                var targetX = this.x(index) + vector.dx
+                var targetY = this.y(index) + vector.dy
+                while(this.index(targetX, targetY) >= 0) {
+                    targets.add(this.index(targetX, targetY))
+                    targetX += vector.dx
+                    targetY += vector.dy
+                }
+            }
+        }
+        rayOffsets[size * DIRECTIONS] = targets.size
+        rayTargets = targets.toIntArray()
+    }
+    
+    /** @return der Index des Feldes an den gegebenen Koordinaten oder -1, wenn es nicht auf dem Spielbrett liegt. */
+    fun index(x: Int, y: Int): Int =
+            if((x + y) % 2 == 0 && x >= 0 && x / 2 < width && y >= 0 && y < height)
+                y * width + x / 2
+            else
+                -1
+    
+    /** @return der Index des Feldes an den gepackten Koordinaten, siehe [index]. */
+    fun index(coordinates: PackedCoordinates): Int =
+            index(coordinates.x, coordinates.y)
+    
+    /** @return die x-Koordinate des Feldes. */
+    fun x(index: Int): Int = Coordinates.packedX(coordinates[index])
+    
+    /** @return die y-Koordinate des Feldes. */
+    fun y(index: Int): Int = Coordinates.packedY(coordinates[index])
+    
+    /** @return die Koordinaten des Feldes in gepackter Form. */
+    fun packed(index: Int): Int = coordinates[index]
+    
+    /** @return der Index des Nachbarfeldes in der gegebenen Richtung oder -1 am Rand. */
+    fun neighbor(index: Int, direction: Int): Int =
+            if(rayLength(index, direction) > 0) rayTargets[rayOffsets[index * DIRECTIONS + direction]] else -1
+    
+    /** @return die Anzahl der Felder vom gegebenen Feld aus in der gegebenen Richtung bis zum Rand. */
+    fun rayLength(index: Int, direction: Int): Int =
+            rayOffsets[index * DIRECTIONS + direction + 1] - rayOffsets[index * DIRECTIONS + direction]
+    
+    /** @return der Index des Feldes [distance] Schritte vom gegebenen Feld entfernt, beginnend bei 1.
+     * Die Distanz muss höchstens [rayLength] betragen. */
+    fun rayTarget(index: Int, direction: Int, distance: Int): Int =
+            rayTargets[rayOffsets[index * DIRECTIONS + direction] + distance - 1]
+    
+    /** Ruft [action] mit dem Index jedes Nachbarfeldes auf. */
+    inline fun forEachNeighbor(index: Int, action: (Int) -> Unit) {
+        for(direction in 0 until DIRECTIONS) {
+            val neighbor = neighbor(index, direction)
+            if(neighbor >= 0)
+                action(neighbor)
+        }
+    }
+    
+    override fun toString() = "DoubledHexGrid(${width}x$height)"
+    
+    companion object {
+        /** Die Anzahl der Richtungen auf dem Spielbrett. */
+        const val DIRECTIONS = 6
+        
+        private val grids = ConcurrentHashMap<Long, DoubledHexGrid>()
+        
+        /** @return die Anzahl der Schritte für die Strecke [dx]/[dy], falls sie auf einer geraden Linie liegt. */
+        @JvmStatic
+        fun distance(dx: Int, dy: Int): Int =
+                if(dy == 0) abs(dx) / 2 else abs(dy)
+        
+        /** @return der Index der Richtung, in der die Strecke [dx]/[dy] liegt,
+         * oder -1 wenn sie nicht auf einer geraden Linie liegt. */
+        @JvmStatic
+        fun direction(dx: Int, dy: Int): Int {
+            val distance = distance(dx, dy)
+            if(distance == 0)
+                return -1
+            for(direction in 0 until DIRECTIONS) {
+                val vector = Vector.DoubledHex.directions[direction]
+                if(vector.dx * distance == dx && vector.dy * distance == dy)
+                    return direction
+            }
+            return -1
+        }
+        
+        /** @return die geteilten Tabellen für ein Spielbrett der gegebenen Größe. */
+        @JvmStatic
+        fun of(width: Int, height: Int): DoubledHexGrid =
+                grids.computeIfAbsent((width.toLong() shl 32) or height.toLong()) { DoubledHexGrid(width, height) }
+        
+        init {
+            require(Vector.DoubledHex.directions.size == DIRECTIONS)
+        }
+    }
+}
@@ -0,0 +1,20 @@
+package sc.api.plugins
+
+/**
+ * Ein Spielstand, der sich als Änderung gegenüber einem vorherigen Spielstand verschicken lässt,
+ * statt nach jedem Zug vollständig, siehe [sc.protocol.room.DeltaMessage].
+ */
+interface IDeltaGameState: IGameState {
+    /** Prüfsumme des Spielstands, mit der Empfänger prüfen, ob sie eine Änderung richtig angewendet haben. */
+    val checksum: Long
+    
+    /** @return die Änderungen von [previous] zu diesem Spielstand,
+     *          oder null wenn besser der vollständige Spielstand verschickt werden sollte */
+    fun diff(previous: IGameState): IStateDelta?
+}
+
+/** Die mit [IDeltaGameState.diff] ermittelten Änderungen zwischen zwei Spielständen. */
+interface IStateDelta {
+    /** Überführt den vorherigen Spielstand in den neuen, indem er direkt verändert wird. */
+    fun applyTo(state: IGameState)
+}
@@ -5,6 +5,7 @@ import sc.api.plugins.host.IGameListener
 import sc.framework.plugins.Player
 import sc.shared.InvalidMoveException
 import sc.shared.PlayerScore
+import java.util.concurrent.Executor
 
 interface IGameInstance {
     /** @return the player that joined. */
@@ -52,4 +53,8 @@ interface IGameInstance {
     /** @return the PlayerScores for both players
      */
     val playerScores: List<PlayerScore>
+    
+    /** Runs the callbacks of move timeouts, such as ending the game on a hard timeout.
+     * Defaults to [sc.framework.plugins.ActionTimeout.CALLBACKS]. */
+    var timeoutExecutor: Executor
 }
@@ -20,7 +20,14 @@ abstract class TwoPlayerGameState<M: IMove>(
     /** Letzter getaetigter Zug. */
     abstract val lastMove: M?
     
-    abstract fun performMove(move: M)
+    /** Führt den gegebenen Zug aus.
+     * @return ein Token, mit dem der Zug über [undoMove] wieder zurückgenommen werden kann */
+    abstract fun performMove(move: M): Long
+    
+    /** Nimmt den zuletzt per [performMove] ausgeführten Zug zurück,
+     * ohne den Spielstand dafür kopieren zu müssen.
+     * @param undo das Token, das [performMove] für diesen Zug zurückgegeben hat */
+    abstract fun undoMove(move: M, undo: Long)
 
     /** Calculates the color of the current player from the [turn] and the [startTeam].
      * Based on the assumption that the current player switches every turn. */
@@ -0,0 +1,25 @@
+package sc.api.plugins
+
+/**
+ * Schlüssel für Zobrist-Hashing von Spielständen.
+ *
+ * Der Schlüssel eines Spielstands ist die XOR-Verknüpfung der Schlüssel aller Belegungen,
+ * sodass er bei jeder Änderung in konstanter Zeit angepasst werden kann.
+ * Die Schlüssel werden deterministisch berechnet statt aus einer Tabelle gelesen,
+ * damit sie für Spielbretter jeder Größe verfügbar sind.
+ */
+object Zobrist {
+    /** @return den festen pseudozufälligen Schlüssel für den Wert [value] an der Position [position]. */
+    @JvmStatic
+    fun key(position: Int, value: Int): Long =
+            mix((position.toLong() shl 32) or (value.toLong() and 0xFFFFFFFFL))
+    
+    /** Verteilt die Bits von [value] gleichmäßig (SplitMix64). */
+    @JvmStatic
+    fun mix(value: Long): Long {
+        var z = value + -0x61c8864680b583ebL
+        z = (z xor (z ushr 30)) * -0x40a7b892e31b1a47L
+        z = (z xor (z ushr 27)) * -0x6b2fb644ecceee15L
+        return z xor (z ushr 31)
+    }
+}
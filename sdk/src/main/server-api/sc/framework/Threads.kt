@@ -0,0 +1,64 @@
+package sc.framework
+
+import org.slf4j.LoggerFactory
+import java.lang.reflect.Method
+
+/**
+ * Creates the threads that mostly wait, such as receive loops of connections and move timeouts.
+ *
+ * If [virtual] is enabled and the JVM supports virtual threads (Java 21, or 19/20 with `--enable-preview`),
+ * these are virtual threads, so that many simultaneous games do not need as many OS threads.
+ * Otherwise, they are ordinary platform threads.
+ * The default is read from the system property [PROPERTY].
+ */
+object Threads {
+    const val PROPERTY = "sc.virtualThreads"
+    
+    private val logger = LoggerFactory.getLogger(Threads::class.java)
+    
+    /** `Thread.ofVirtual()` together with `Thread.Builder.name` and `Thread.Builder.unstarted`,
+     * looked up reflectively so that the sdk still runs on Java 8. */
+    private val builder: Triple<Method, Method, Method>? = try {
+        val builderClass = Class.forName("java.lang.Thread\$Builder")
+        val methods = Triple(Thread::class.java.getMethod("ofVirtual"),
+                builderClass.getMethod("name", String::class.java),
+                builderClass.getMethod("unstarted", Runnable::class.java))
+        // fails if virtual threads are a preview feature which is not enabled
+        methods.first.invoke(null)
+        methods
+    } catch(e: Exception) {
+        logger.debug("Virtual threads are not available: {}", e.toString())
+        null
+    }
+    
+    /** Whether the JVM supports virtual threads. */
+    @JvmStatic
+    val virtualSupported: Boolean
+        get() = builder != null
+    
+    /** Whether to create virtual threads if supported. */
+    @JvmStatic
+    var virtual: Boolean = java.lang.Boolean.getBoolean(PROPERTY)
+        set(value) {
+            if(value && !virtualSupported)
+                logger.warn("Virtual threads are not supported by this JVM, falling back to platform threads")
+            field = value
+        }
+    
+    /** @return a new, not yet started daemon thread */
+    @JvmStatic
+    fun create(name: String, task: Runnable): Thread = create(name, true, task)
+    
+    /** @param daemon whether the thread should not keep the JVM alive,
+     *               only daemon threads can be virtual.
+     * @return a new, not yet started thread */
+    @JvmStatic
+    fun create(name: String, daemon: Boolean, task: Runnable): Thread {
+        if(virtual && daemon) {
+            builder?.let { (ofVirtual, setName, unstarted) ->
+                return unstarted.invoke(setName.invoke(ofVirtual.invoke(null), name), task) as Thread
+            }
+        }
+        return Thread(task, name).apply { isDaemon = daemon }
+    }
+}
@@ -8,6 +8,7 @@ import sc.api.plugins.exceptions.TooManyPlayersException
 import sc.api.plugins.host.IGameListener
 import sc.protocol.room.WelcomeMessage
 import sc.shared.*
+import java.util.concurrent.Executor
 
 abstract class AbstractGame(override val pluginUUID: String): IGameInstance, Pausable {
     companion object {
@@ -23,6 +24,8 @@ abstract class AbstractGame(override val pluginUUID: String): IGameInstance, Pau
     
     private var moveRequestTimeout: ActionTimeout? = null
     
+    override var timeoutExecutor: Executor = ActionTimeout.CALLBACKS
+    
     override val winner: ITeam?
         get() = players.singleOrNull { !it.hasViolated() && !it.hasLeft() }?.team
                 ?: checkWinCondition()?.also { logger.debug("No Winner via violation, WinCondition: {}", it) }?.winner
@@ -58,7 +61,7 @@ abstract class AbstractGame(override val pluginUUID: String): IGameInstance, Pau
         moveRequestTimeout?.let { timer ->
             moveRequestTimeout = null
             timer.stop()
-            logger.info("Time needed for move: " + timer.timeDiff)
+            logger.info("Time needed for move: {}ms (GC pauses: {}ms)", timer.timeDiff, timer.gcPause)
             if(timer.didTimeout()) {
                 logger.warn("Client hit soft-timeout.")
                 fromPlayer.softTimeout = true
@@ -187,19 +190,15 @@ abstract class AbstractGame(override val pluginUUID: String): IGameInstance, Pau
     /** Sends a MoveRequest directly to the given player.
      * Does not consider the pause state. */
     protected fun requestMove(player: Player) {
+        // garbage collection pauses during the move are credited by the timeout
         val timeout: ActionTimeout = if(player.canTimeout) getTimeoutFor(player) else ActionTimeout(false)
         
-        // Signal the JVM to do a GC run now and lower the propability that the GC
-        // runs when the player sends back its move, resulting in disqualification
-        // because of soft timeout.
-        System.gc()
-        
         moveRequestTimeout = timeout
-        timeout.start {
+        timeout.start({
             logger.warn("Player $player reached the timeout of ${timeout.hardTimeout}ms")
             player.hardTimeout = true
             stop()
-        }
+        }, timeoutExecutor)
         
         logger.info("Sending MoveRequest to player $activePlayer")
         player.requestMove()
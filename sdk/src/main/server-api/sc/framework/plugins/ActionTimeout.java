@@ -2,24 +2,54 @@ package sc.framework.plugins;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-
-// TODO We can probably utilise an inbuilt class instead.
-/** Tracks timeouts in Milliseconds. */
+import sc.framework.Threads;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tracks timeouts in Milliseconds.
+ *
+ * Hard timeouts of all instances are scheduled on a single shared thread,
+ * durations are measured with {@link System#nanoTime()}.
+ * That thread only hands the callbacks of expired timeouts to an {@link Executor},
+ * so a slow callback does not delay the timeouts of other games.
+ */
 public class ActionTimeout {
   static final Logger logger = LoggerFactory.getLogger(ActionTimeout.class);
 
+  private static final ScheduledThreadPoolExecutor scheduler = new ScheduledThreadPoolExecutor(1,
+      task -> Threads.create("ActionTimeout-Scheduler", task));
+
+  /** Runs the callbacks of timeouts started without an executor. */
+  public static final ExecutorService CALLBACKS = Executors.newCachedThreadPool(
+      task -> Threads.create("ActionTimeout-Callback", task));
+
+  static {
+    // most timeouts are stopped long before they expire
+    scheduler.setRemoveOnCancelPolicy(true);
+  }
+
   private final long softTimeoutInMilliseconds;
 
   private final long hardTimeoutInMilliseconds;
 
   private final boolean canTimeout;
 
-  private Thread timeoutThread;
+  private ScheduledFuture<?> timeoutTask;
 
   private Status status = Status.NEW;
 
   private long startTimestamp = 0;
   private long stopTimestamp = 0;
+  /** Start and stop in the time base of {@link GcPauses}. */
+  private long startUptime = 0;
+  private long stopUptime = 0;
 
   private static final int DEFAULT_HARD_TIMEOUT = 10000;
   private static final int DEFAULT_SOFT_TIMEOUT = 5000;
@@ -68,11 +98,23 @@ public class ActionTimeout {
       throw new IllegalStateException("Timeout was not stopped.");
     }
 
+    return TimeUnit.NANOSECONDS.toMillis(getTimeDiffNanos());
+  }
+
+  private long getTimeDiffNanos() {
     return stopTimestamp - startTimestamp;
   }
 
+  /** @return milliseconds the JVM was paused by garbage collection between start and stop */
+  public long getGcPause() {
+    getTimeDiff(); // validate status
+    return GcPauses.pausedBetween(startUptime, stopUptime);
+  }
+
+  /** Whether the soft timeout was exceeded, not counting time the JVM was paused by garbage collection. */
   public synchronized boolean didTimeout() {
-    return this.canTimeout() && this.getTimeDiff() > this.softTimeoutInMilliseconds;
+    return this.canTimeout() &&
+        this.getTimeDiffNanos() - TimeUnit.MILLISECONDS.toNanos(getGcPause()) > TimeUnit.MILLISECONDS.toNanos(this.softTimeoutInMilliseconds);
   }
 
   public synchronized void stop() {
@@ -85,34 +127,61 @@ public class ActionTimeout {
       return;
     }
 
-    this.stopTimestamp = System.currentTimeMillis();
+    this.stopTimestamp = System.nanoTime();
+    this.stopUptime = GcPauses.uptime();
     this.status = Status.STOPPED;
 
-    if (this.timeoutThread != null) {
-      this.timeoutThread.interrupt();
+    if (this.timeoutTask != null) {
+      this.timeoutTask.cancel(false);
     }
   }
 
-  public synchronized void start(final Runnable onTimeout) {
+  /**
+   * Starts measuring and, if this can time out, schedules onTimeout for when the hard timeout is reached.
+   * It runs on the shared {@link #CALLBACKS} pool.
+   */
+  public void start(final Runnable onTimeout) {
+    start(onTimeout, CALLBACKS);
+  }
+
+  /**
+   * Starts measuring and, if this can time out, schedules onTimeout for when the hard timeout is reached.
+   *
+   * @param executor runs onTimeout, e.g. on the thread handling the other events of the game
+   */
+  public synchronized void start(final Runnable onTimeout, final Executor executor) {
     if (this.status != Status.NEW) {
       throw new IllegalStateException("Redundant start: was already started!");
     }
 
+    this.startTimestamp = System.nanoTime();
+    this.startUptime = GcPauses.uptime();
+    this.status = Status.STARTED;
+
     if (canTimeout()) {
-      this.timeoutThread = new Thread(() -> {
+      this.timeoutTask = scheduler.schedule(() -> {
+        if (!expire())
+          return;
         try {
-          Thread.sleep(getHardTimeout());
-          stop();
-          onTimeout.run();
-        } catch (InterruptedException e) {
-          logger.info("HardTimout wasn't reached.");
+          executor.execute(onTimeout);
+        } catch (RejectedExecutionException e) {
+          logger.warn("Dropped the callback of {}", this, e);
         }
-      });
-      this.timeoutThread.start();
+      }, getHardTimeout(), TimeUnit.MILLISECONDS);
     }
+  }
 
-    this.startTimestamp = System.currentTimeMillis();
-    this.status = Status.STARTED;
+  /** Stops the timeout when the hard timeout is reached, unless it was stopped already.
+   * @return whether it was still running */
+  private synchronized boolean expire() {
+    if (this.status != Status.STARTED) {
+      logger.info("HardTimout wasn't reached.");
+      return false;
+    }
+    this.stopTimestamp = System.nanoTime();
+    this.stopUptime = GcPauses.uptime();
+    this.status = Status.STOPPED;
+    return true;
   }
 
   @Override
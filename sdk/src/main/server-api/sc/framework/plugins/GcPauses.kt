@@ -0,0 +1,78 @@
+package sc.framework.plugins
+
+import com.sun.management.GarbageCollectionNotificationInfo
+import org.slf4j.LoggerFactory
+import java.lang.management.ManagementFactory
+import javax.management.NotificationEmitter
+import javax.management.openmbean.CompositeData
+
+/**
+ * Records the recent stop-the-world pauses of the garbage collectors
+ * from the notifications of their [java.lang.management.GarbageCollectorMXBean]s,
+ * so that an [ActionTimeout] can credit pauses during a move back to the player.
+ *
+ * All times are milliseconds since the start of the JVM, as reported by the collectors.
+ * Notifications arrive shortly after a collection ends,
+ * so a pause right before a move arrives might not be accounted for.
+ */
+object GcPauses {
+    private val logger = LoggerFactory.getLogger(GcPauses::class.java)
+    
+    private const val CAPACITY = 256
+    
+    private val runtime = ManagementFactory.getRuntimeMXBean()
+    private val starts = LongArray(CAPACITY)
+    private val ends = LongArray(CAPACITY)
+    private var next = 0
+    private var size = 0
+    
+    /** Whether pauses are recorded on this JVM. */
+    @JvmStatic
+    val available: Boolean = try {
+        ManagementFactory.getGarbageCollectorMXBeans()
+                // ZGC and Shenandoah report their concurrent cycles on separate beans
+                .filter { !it.name.endsWith("Cycles") }
+                .filterIsInstance<NotificationEmitter>()
+                .onEach { bean -> bean.addNotificationListener({ notification, _ -> onNotification(notification.type, notification.userData) }, null, null) }
+                .isNotEmpty()
+    } catch(e: Throwable) {
+        logger.warn("Garbage collection pauses can not be tracked: {}", e.toString())
+        false
+    }
+    
+    /** @return the current time in the time base of the pauses */
+    @JvmStatic
+    fun uptime(): Long = runtime.uptime
+    
+    /** @return how many milliseconds between [from] and [to] the JVM was paused by the garbage collector */
+    @JvmStatic
+    @Synchronized
+    fun pausedBetween(from: Long, to: Long): Long {
+        var paused = 0L
+        for(index in 0 until size) {
+            val overlap = minOf(to, ends[index]) - maxOf(from, starts[index])
+            if(overlap > 0)
+                paused += overlap
+        }
+        return paused
+    }
+    
+    private fun onNotification(type: String, data: Any?) {
+        if(type != GarbageCollectionNotificationInfo.GARBAGE_COLLECTION_NOTIFICATION)
+            return
+        val info = GarbageCollectionNotificationInfo.from(data as CompositeData)
+        // e.g. the concurrent cycles of G1 on newer JVMs, which do not stop the application
+        if(info.gcName.contains("Concurrent", true))
+            return
+        record(info.gcInfo.startTime, info.gcInfo.endTime)
+    }
+    
+    @Synchronized
+    private fun record(start: Long, end: Long) {
+        starts[next] = start
+        ends[next] = end
+        next = (next + 1) % CAPACITY
+        if(size < CAPACITY)
+            size++
+    }
+}
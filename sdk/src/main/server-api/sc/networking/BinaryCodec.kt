@@ -0,0 +1,19 @@
+package sc.networking
+
+import java.net.ProtocolException
+
+/**
+ * Writes and reads values of the [type] in the [BinaryProtocol].
+ *
+ * Plugins can provide codecs for their state and moves via [XStreamProvider.binaryCodecs],
+ * all other values are embedded as XML.
+ */
+interface BinaryCodec<T: Any> {
+    /** The exact class of the values handled by this codec, subclasses are not included. */
+    val type: Class<T>
+    
+    fun write(value: T, output: BinaryOutput)
+    
+    @Throws(ProtocolException::class)
+    fun read(input: BinaryInput): T
+}
@@ -0,0 +1,76 @@
+package sc.networking
+
+import java.net.ProtocolException
+
+/** Reads values written by a [BinaryOutput]. */
+class BinaryInput internal constructor(private val protocol: BinaryProtocol, private val bytes: ByteArray) {
+    private var position = 0
+    
+    /** Number of bytes not read yet. */
+    val remaining: Int
+        get() = bytes.size - position
+    
+    @Throws(ProtocolException::class)
+    private fun ensureAvailable(count: Int) {
+        if(count < 0 || count > remaining)
+            throw ProtocolException("Expected $count more bytes, but only $remaining remain")
+    }
+    
+    @Throws(ProtocolException::class)
+    fun readByte(): Int {
+        ensureAvailable(1)
+        return bytes[position++].toInt() and 0xFF
+    }
+    
+    @Throws(ProtocolException::class)
+    fun readBytes(count: Int): ByteArray {
+        ensureAvailable(count)
+        return bytes.copyOfRange(position, position + count).also { position += count }
+    }
+    
+    /** @see BinaryOutput.writeVarint */
+    @Throws(ProtocolException::class)
+    fun readVarint(): Int {
+        var result = 0
+        var shift = 0
+        while(shift < Int.SIZE_BITS) {
+            val byte = readByte()
+            result = result or ((byte and 0x7F) shl shift)
+            if(byte and 0x80 == 0)
+                return result
+            shift += 7
+        }
+        throw ProtocolException("Malformed varint")
+    }
+    
+    /** @see BinaryOutput.writeLong */
+    @Throws(ProtocolException::class)
+    fun readLong(): Long {
+        var result = 0L
+        repeat(8) { result = (result shl 8) or readByte().toLong() }
+        return result
+    }
+    
+    @Throws(ProtocolException::class)
+    fun readString(): String =
+            String(readBytes(readVarint()), Charsets.UTF_8)
+    
+    /** @see BinaryOutput.writeValue */
+    @Throws(ProtocolException::class)
+    fun readValue(): Any? =
+            protocol.readValue(this)
+    
+    /** @return the next value, which must be of the given [type] or null */
+    @Throws(ProtocolException::class)
+    fun <T> readNullable(type: Class<T>): T? {
+        val value = readValue() ?: return null
+        if(!type.isInstance(value))
+            throw ProtocolException("Expected ${type.simpleName}, but got ${value.javaClass.name}")
+        return type.cast(value)
+    }
+    
+    /** @return the next value, which must be of the given [type] */
+    @Throws(ProtocolException::class)
+    fun <T> read(type: Class<T>): T =
+            readNullable(type) ?: throw ProtocolException("Expected ${type.simpleName}, but got null")
+}
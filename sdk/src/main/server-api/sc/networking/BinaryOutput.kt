@@ -0,0 +1,57 @@
+package sc.networking
+
+/** Encodes values for the [BinaryProtocol] into a growing byte array. */
+class BinaryOutput internal constructor(private val protocol: BinaryProtocol) {
+    private var buffer = ByteArray(64)
+    
+    /** Number of bytes written. */
+    var size = 0
+        private set
+    
+    private fun ensureCapacity(additional: Int) {
+        if(size + additional > buffer.size)
+            buffer = buffer.copyOf(maxOf(buffer.size * 2, size + additional))
+    }
+    
+    fun writeByte(value: Int) {
+        ensureCapacity(1)
+        buffer[size++] = value.toByte()
+    }
+    
+    /** Writes the bytes as they are, the reader has to know their number. */
+    fun writeBytes(bytes: ByteArray) {
+        ensureCapacity(bytes.size)
+        bytes.copyInto(buffer, size)
+        size += bytes.size
+    }
+    
+    /** Writes the int as unsigned LEB128 with 7 bits per byte,
+     * so small non-negative numbers take a single byte and negative ones five. */
+    fun writeVarint(value: Int) {
+        var rest = value
+        while(rest and 0x7F.inv() != 0) {
+            writeByte((rest and 0x7F) or 0x80)
+            rest = rest ushr 7
+        }
+        writeByte(rest)
+    }
+    
+    /** Writes the long as 8 bytes, most significant first. */
+    fun writeLong(value: Long) {
+        for(shift in 56 downTo 0 step 8)
+            writeByte((value ushr shift).toInt())
+    }
+    
+    /** Writes the string as UTF-8, prefixed with its length in bytes. */
+    fun writeString(value: String) {
+        val bytes = value.toByteArray(Charsets.UTF_8)
+        writeVarint(bytes.size)
+        writeBytes(bytes)
+    }
+    
+    /** Writes the value with the codec of its class, or as XML if there is none. */
+    fun writeValue(value: Any?) =
+            protocol.writeValue(value, this)
+    
+    fun toByteArray(): ByteArray = buffer.copyOf(size)
+}
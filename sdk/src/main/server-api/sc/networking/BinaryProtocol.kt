@@ -0,0 +1,129 @@
+package sc.networking
+
+import com.thoughtworks.xstream.XStream
+import com.thoughtworks.xstream.io.xml.CompactWriter
+import sc.api.plugins.IGameState
+import sc.api.plugins.IStateDelta
+import sc.protocol.BinaryEncoding
+import sc.protocol.ProtocolPacket
+import sc.protocol.room.DeltaMessage
+import sc.protocol.room.MementoMessage
+import sc.protocol.room.MoveRequest
+import sc.protocol.room.RoomMessage
+import sc.protocol.room.RoomPacket
+import java.io.StringWriter
+import java.net.ProtocolException
+
+/**
+ * Compact alternative to the XML encoding of [ProtocolPacket]s.
+ *
+ * A client opts in by requesting the [ENCODING] when joining a game.
+ * Each side then announces the switch with a [BinaryEncoding] packet,
+ * after which it sends every packet as a frame: its length as varint, followed by the encoded packet.
+ *
+ * Every value starts with a varint tag: [NULL_TAG], [XML_TAG] for values without a [BinaryCodec],
+ * followed by their XML, or the index of their codec offset by [FIRST_CODEC_TAG].
+ * As the tags of plugin codecs depend on their order, both sides need to use the same plugin.
+ */
+class BinaryProtocol(private val xStream: XStream, codecs: Collection<BinaryCodec<*>>) {
+    private val codecs: List<BinaryCodec<*>> = BUILTIN_CODECS + codecs
+    private val tags: Map<Class<*>, Int> =
+            this.codecs.withIndex().associate { (index, codec) -> codec.type to index + FIRST_CODEC_TAG }
+    
+    /** @return the frame of the packet, including its length */
+    fun encode(packet: Any): ByteArray {
+        val body = BinaryOutput(this).apply { writeValue(packet) }
+        return BinaryOutput(this).apply {
+            writeVarint(body.size)
+            writeBytes(body.toByteArray())
+        }.toByteArray()
+    }
+    
+    /** @param frame an encoded packet without its length, as split off by the [PacketFramer] */
+    @Throws(ProtocolException::class)
+    fun decode(frame: ByteArray): ProtocolPacket {
+        val input = BinaryInput(this, frame)
+        val packet = input.read(ProtocolPacket::class.java)
+        if(input.remaining > 0)
+            throw ProtocolException("${input.remaining} unexpected bytes after $packet")
+        return packet
+    }
+    
+    internal fun writeValue(value: Any?, output: BinaryOutput) {
+        if(value == null) {
+            output.writeVarint(NULL_TAG)
+            return
+        }
+        val tag = tags[value.javaClass]
+        if(tag == null) {
+            output.writeVarint(XML_TAG)
+            output.writeString(StringWriter().also { xStream.marshal(value, CompactWriter(it)) }.toString())
+        } else {
+            output.writeVarint(tag)
+            @Suppress("UNCHECKED_CAST")
+            (codecs[tag - FIRST_CODEC_TAG] as BinaryCodec<Any>).write(value, output)
+        }
+    }
+    
+    @Throws(ProtocolException::class)
+    internal fun readValue(input: BinaryInput): Any? =
+            when(val tag = input.readVarint()) {
+                NULL_TAG -> null
+                XML_TAG -> xStream.fromXML(input.readString())
+                else -> codecs.getOrNull(tag - FIRST_CODEC_TAG)?.read(input)
+                        ?: throw ProtocolException("Unknown tag $tag")
+            }
+    
+    companion object {
+        /** Value of the encoding attribute of join requests to opt into this protocol. */
+        const val ENCODING = "binary"
+        
+        const val NULL_TAG = 0
+        const val XML_TAG = 1
+        const val FIRST_CODEC_TAG = 2
+        
+        private val BUILTIN_CODECS: List<BinaryCodec<*>> = listOf(RoomPacketCodec, MementoCodec, MoveRequestCodec, DeltaCodec)
+    }
+}
+
+private object RoomPacketCodec: BinaryCodec<RoomPacket> {
+    override val type = RoomPacket::class.java
+    
+    override fun write(value: RoomPacket, output: BinaryOutput) {
+        output.writeString(value.roomId)
+        output.writeValue(value.data)
+    }
+    
+    override fun read(input: BinaryInput) =
+            RoomPacket(input.readString(), input.read(RoomMessage::class.java))
+}
+
+private object MementoCodec: BinaryCodec<MementoMessage> {
+    override val type = MementoMessage::class.java
+    
+    override fun write(value: MementoMessage, output: BinaryOutput) =
+            output.writeValue(value.state)
+    
+    override fun read(input: BinaryInput) =
+            MementoMessage(input.read(IGameState::class.java), null)
+}
+
+private object MoveRequestCodec: BinaryCodec<MoveRequest> {
+    override val type = MoveRequest::class.java
+    
+    override fun write(value: MoveRequest, output: BinaryOutput) {}
+    
+    override fun read(input: BinaryInput) = MoveRequest()
+}
+
+private object DeltaCodec: BinaryCodec<DeltaMessage> {
+    override val type = DeltaMessage::class.java
+    
+    override fun write(value: DeltaMessage, output: BinaryOutput) {
+        output.writeValue(value.delta)
+        output.writeLong(value.checksum)
+    }
+    
+    override fun read(input: BinaryInput) =
+            DeltaMessage(input.read(IStateDelta::class.java), input.readLong())
+}
@@ -0,0 +1,17 @@
+package sc.networking;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * The sending side of a connection.
+ * Transports that read from the network themselves and hand received packets to the client,
+ * such as a selector, only need to provide this instead of an {@link INetworkInterface}.
+ */
+public interface IOutputNetworkInterface {
+
+  OutputStream getOutputStream() throws IOException;
+
+  void close() throws IOException;
+
+}
@@ -0,0 +1,91 @@
+package sc.networking
+
+import sc.protocol.BinaryEncoding
+import java.net.ProtocolException
+import java.nio.ByteBuffer
+
+/**
+ * Splits the incoming data of a connection into packets.
+ *
+ * Packets are read as XML by an [XmlFrameDecoder]
+ * until the other side announces the [BinaryProtocol] with a [BinaryEncoding] packet,
+ * from then on as frames prefixed with their length.
+ */
+class PacketFramer @JvmOverloads constructor(private val maxFrameSize: Int = XmlFrameDecoder.DEFAULT_MAX_FRAME_SIZE) {
+    private val xml = XmlFrameDecoder(maxFrameSize, BinaryEncoding.ELEMENT)
+    
+    private var buffer = ByteArray(0)
+    /** Number of bytes in [buffer]. */
+    private var length = 0
+    
+    /** Whether the packets are binary frames now. */
+    val isBinary: Boolean
+        get() = xml.isSwitched
+    
+    /** @see XmlFrameDecoder.openElement */
+    val openElement: String?
+        get() = xml.openElement
+    
+    /** @see XmlFrameDecoder.isFinished */
+    val isFinished: Boolean
+        get() = xml.isFinished
+    
+    /** Reads all remaining bytes from [input].
+     * @return each packet completed by them,
+     *         either a [String] with its XML or a [ByteArray] for the [BinaryProtocol]
+     * @throws ProtocolException if a packet exceeds the maximum size */
+    @Throws(ProtocolException::class)
+    fun feed(input: ByteBuffer): List<Any> {
+        if(isBinary)
+            return readFrames(input)
+        val frames = ArrayList<Any>(xml.feed(input))
+        if(isBinary)
+            frames.addAll(readFrames(xml.takeRemaining()))
+        return frames
+    }
+    
+    private fun readFrames(input: ByteBuffer): List<ByteArray> {
+        if(length + input.remaining() > buffer.size)
+            buffer = buffer.copyOf(maxOf(buffer.size * 2, length + input.remaining()))
+        val read = input.remaining()
+        input.get(buffer, length, read)
+        length += read
+        
+        val frames = ArrayList<ByteArray>()
+        var position = 0
+        while(position < length) {
+            var size = 0
+            var offset = position
+            var complete = false
+            for(shift in 0 until Int.SIZE_BITS step 7) {
+                if(offset == length)
+                    break
+                val byte = buffer[offset++].toInt()
+                size = size or ((byte and 0x7F) shl shift)
+                if(byte and 0x80 == 0) {
+                    complete = true
+                    break
+                }
+            }
+            if(!complete) {
+                if(offset - position == MAX_LENGTH_BYTES)
+                    throw ProtocolException("Malformed frame length")
+                break
+            }
+            if(size < 0 || size > maxFrameSize)
+                throw ProtocolException("Frame of $size bytes exceeds $maxFrameSize bytes")
+            if(length - offset < size)
+                break
+            frames.add(buffer.copyOfRange(offset, offset + size))
+            position = offset + size
+        }
+        buffer.copyInto(buffer, 0, position, length)
+        length -= position
+        return frames
+    }
+    
+    companion object {
+        /** Maximum length of a varint encoding an int. */
+        private const val MAX_LENGTH_BYTES = 5
+    }
+}
@@ -0,0 +1,29 @@
+package sc.networking
+
+import com.thoughtworks.xstream.XStream
+import com.thoughtworks.xstream.io.xml.CompactWriter
+import sc.protocol.ProtocolPacket
+import java.io.StringWriter
+
+/**
+ * A [packet] sent to many clients, such as a new game state for all players and observers of a room.
+ * It is serialized at most once per encoding, and the same bytes are written to every client.
+ * The packet must not change until it has been sent to all of them.
+ */
+class SerializedPacket(val packet: ProtocolPacket) {
+    private var xml: ByteArray? = null
+    private var binary: ByteArray? = null
+    
+    /** @return the packet as compact XML element in UTF-8 */
+    @Synchronized
+    fun xml(xStream: XStream): ByteArray =
+            xml ?: StringWriter().also { xStream.marshal(packet, CompactWriter(it)) }
+                    .toString().toByteArray(Charsets.UTF_8).also { xml = it }
+    
+    /** @return the frame of the packet, see [BinaryProtocol.encode] */
+    @Synchronized
+    fun binary(protocol: BinaryProtocol): ByteArray =
+            binary ?: protocol.encode(packet).also { binary = it }
+    
+    override fun toString() = packet.toString()
+}
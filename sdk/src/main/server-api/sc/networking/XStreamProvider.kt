@@ -39,10 +39,38 @@ interface XStreamProvider {
                         provider.setup(xStream)
                     }
                 }
+        
+        /** Whether providers should write their classes in a more compact XML in [setup],
+         *  which older clients might not read. Has to be set before the [sharedXStream] is first used. */
+        @JvmStatic
+        var compactXml: Boolean = false
+        
+        private val shared: XStream by lazy { loadPluginXStream() }
+        private val sharedBinary: BinaryProtocol by lazy { loadBinaryProtocol(shared) }
+        
+        /** @return a single instance of [loadPluginXStream] for all connections and replays,
+         *          so that the providers and annotations are only processed once.
+         *          Since it is used from many threads at once, it must not be configured any further. */
+        @JvmStatic
+        fun sharedXStream(): XStream = shared
+        
+        /** @return the [BinaryProtocol] for the [sharedXStream], see [loadBinaryProtocol] */
+        @JvmStatic
+        fun sharedBinaryProtocol(): BinaryProtocol = sharedBinary
+        
+        /** @return a [BinaryProtocol] with the [binaryCodecs] of all providers,
+         *          falling back to the given [xStream] for other values. */
+        @JvmStatic
+        fun loadBinaryProtocol(xStream: XStream): BinaryProtocol =
+                BinaryProtocol(xStream, ServiceLoader.load(XStreamProvider::class.java).flatMap { it.binaryCodecs })
     }
     
     val classesToRegister: Collection<Class<*>>
     
+    /** Codecs for the [BinaryProtocol], ideally for the state and moves of the game. */
+    val binaryCodecs: Collection<BinaryCodec<*>>
+        get() = emptyList()
+    
     fun setup(xStream: XStream) {}
     
 }
\ No newline at end of file
@@ -0,0 +1,208 @@
+package sc.networking
+
+import java.net.ProtocolException
+import java.nio.ByteBuffer
+
+/**
+ * Splits the incoming `<protocol>` stream into the XML of the individual packets
+ * without parsing them, so that a connection can be read incrementally from a non-blocking channel.
+ *
+ * Only the nesting of elements is tracked,
+ * taking into account quoted attribute values, comments, CDATA sections and processing instructions.
+ * All markup is ASCII, so multi-byte UTF-8 characters never need to be decoded.
+ *
+ * @param switchElement name of the packet after which the other side stops sending XML,
+ *                      see [isSwitched]
+ */
+class XmlFrameDecoder @JvmOverloads constructor(
+        private val maxFrameSize: Int = DEFAULT_MAX_FRAME_SIZE,
+        private val switchElement: String? = null,
+) {
+    private enum class State { TEXT, TAG_OPEN, TAG, SINGLE_QUOTE, DOUBLE_QUOTE, MARKUP, COMMENT, CDATA, DECLARATION, PROCESSING }
+    
+    private var buffer = ByteArray(1024)
+    /** Number of bytes in [buffer]. */
+    private var length = 0
+    /** Number of bytes in [buffer] that have been scanned. */
+    private var position = 0
+    
+    private var state = State.TEXT
+    private var depth = 0
+    /** Position of the `<` of the current tag. */
+    private var tagStart = 0
+    private var closingTag = false
+    /** Position of the start tag of the packet currently being read, or -1. */
+    private var frameStart = -1
+    
+    /** The name of the packet whose start tag has been read, but which is not complete yet. */
+    var openElement: String? = null
+        private set
+    
+    /** Whether the closing tag of the protocol has been read, after which all input is ignored. */
+    var isFinished = false
+        private set
+    
+    /** Whether a [switchElement] packet has been read.
+     * The bytes following it are not scanned anymore, see [takeRemaining]. */
+    var isSwitched = false
+        private set
+    
+    /** Reads all remaining bytes from [input].
+     * @return the XML of each packet completed by them
+     * @throws ProtocolException if a packet exceeds the maximum size */
+    @Throws(ProtocolException::class)
+    fun feed(input: ByteBuffer): List<String> {
+        if(isFinished) {
+            input.position(input.limit())
+            return emptyList()
+        }
+        check(!isSwitched) { "No more XML expected after <$switchElement>" }
+        compact()
+        if(length + input.remaining() > buffer.size)
+            buffer = buffer.copyOf(maxOf(buffer.size * 2, length + input.remaining()))
+        val read = input.remaining()
+        input.get(buffer, length, read)
+        length += read
+        
+        val frames = ArrayList<String>()
+        while(position < length && !isFinished && !isSwitched) {
+            scan(buffer[position].toChar(), frames)
+            position++
+        }
+        if(frameStart >= 0 && position - frameStart > maxFrameSize)
+            throw ProtocolException("Packet $openElement exceeds $maxFrameSize bytes")
+        return frames
+    }
+    
+    /** @return the bytes received after the [switchElement] packet */
+    fun takeRemaining(): ByteBuffer {
+        check(isSwitched) { "No <$switchElement> received yet" }
+        val remaining = ByteBuffer.wrap(buffer.copyOfRange(position, length))
+        position = length
+        return remaining
+    }
+    
+    private fun scan(char: Char, frames: MutableList<String>) {
+        when(state) {
+            State.TEXT ->
+                if(char == '<') {
+                    tagStart = position
+                    state = State.TAG_OPEN
+                }
+            State.TAG_OPEN -> when(char) {
+                '/' -> {
+                    closingTag = true
+                    state = State.TAG
+                }
+                '?' -> state = State.PROCESSING
+                '!' -> state = State.MARKUP
+                else -> {
+                    closingTag = false
+                    state = State.TAG
+                    if(char == '>')
+                        endTag(frames)
+                }
+            }
+            State.TAG -> when(char) {
+                '"' -> state = State.DOUBLE_QUOTE
+                '\'' -> state = State.SINGLE_QUOTE
+                '>' -> endTag(frames)
+            }
+            State.DOUBLE_QUOTE -> if(char == '"') state = State.TAG
+            State.SINGLE_QUOTE -> if(char == '\'') state = State.TAG
+            State.MARKUP -> {
+                // distinguish <!-- and <![CDATA[ from other declarations
+                val offset = position - tagStart - 2
+                val prefix = if(buffer[tagStart + 2].toChar() == '-') COMMENT_START else CDATA_START
+                state = when {
+                    char == prefix[offset] -> when {
+                        offset < prefix.lastIndex -> State.MARKUP
+                        prefix == COMMENT_START -> State.COMMENT
+                        else -> State.CDATA
+                    }
+                    char == '>' -> State.TEXT
+                    else -> State.DECLARATION
+                }
+            }
+            State.COMMENT ->
+                if(endsWith("-->", tagStart + 4))
+                    state = State.TEXT
+            State.CDATA ->
+                if(endsWith("]]>", tagStart + 9))
+                    state = State.TEXT
+            State.PROCESSING ->
+                if(endsWith("?>", tagStart + 2))
+                    state = State.TEXT
+            State.DECLARATION ->
+                if(char == '>')
+                    state = State.TEXT
+        }
+    }
+    
+    /** Handles the `>` of a start or end tag at the current position. */
+    private fun endTag(frames: MutableList<String>) {
+        state = State.TEXT
+        if(closingTag) {
+            depth--
+            when(depth) {
+                1 -> emit(frames, openElement)
+                0 -> isFinished = true
+            }
+        } else if(buffer[position - 1].toChar() == '/') {
+            if(depth == 1) {
+                frameStart = tagStart
+                emit(frames, tagName())
+            }
+        } else {
+            depth++
+            if(depth == 2) {
+                frameStart = tagStart
+                openElement = tagName()
+            }
+        }
+    }
+    
+    private fun emit(frames: MutableList<String>, name: String?) {
+        frames.add(String(buffer, frameStart, position + 1 - frameStart, Charsets.UTF_8))
+        frameStart = -1
+        openElement = null
+        if(name != null && name == switchElement)
+            isSwitched = true
+    }
+    
+    private fun tagName(): String {
+        var end = tagStart + 1
+        while(end < position && !buffer[end].toChar().let { it.isWhitespace() || it == '/' || it == '>' })
+            end++
+        return String(buffer, tagStart + 1, end - tagStart - 1, Charsets.UTF_8)
+    }
+    
+    /** @return whether the bytes up to the current position end with [suffix], starting no earlier than [from] */
+    private fun endsWith(suffix: String, from: Int): Boolean {
+        val start = position + 1 - suffix.length
+        return start >= from && suffix.indices.all { buffer[start + it].toChar() == suffix[it] }
+    }
+    
+    /** Drops all bytes that are no longer needed. */
+    private fun compact() {
+        val keep = when {
+            frameStart >= 0 -> frameStart
+            state != State.TEXT -> tagStart
+            else -> position
+        }
+        if(keep == 0)
+            return
+        System.arraycopy(buffer, keep, buffer, 0, length - keep)
+        length -= keep
+        position -= keep
+        tagStart -= keep
+        if(frameStart >= 0)
+            frameStart -= keep
+    }
+    
+    companion object {
+        const val DEFAULT_MAX_FRAME_SIZE = 16 shl 20
+        private const val COMMENT_START = "--"
+        private const val CDATA_START = "[CDATA["
+    }
+}
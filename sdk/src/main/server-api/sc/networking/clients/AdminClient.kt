@@ -19,7 +19,7 @@ class AdminClient(private val client: LobbyClient) {
     /** Registers [listener] onto the given room. */
     fun observe(roomId: String, listener: (ObservableRoomMessage) -> Unit) {
         client.observeRoom(roomId, listener)
-        client.send(ObservationRequest(roomId))
+        client.send(ObservationRequest(roomId, client.isDeltaMementos.takeIf { it }))
     }
     
 }
\ No newline at end of file
@@ -1,5 +1,6 @@
 package sc.networking.clients;
 
+import sc.networking.SerializedPacket;
 import sc.protocol.ProtocolPacket;
 
 import java.io.Closeable;
@@ -8,4 +9,25 @@ import java.io.Closeable;
 public interface IClient extends Closeable {
   /** Send a package. */
   void send(ProtocolPacket packet);
+
+  /** Send a package shared with other clients, reusing its serialization if possible. */
+  default void send(SerializedPacket packet) {
+    send(packet.getPacket());
+  }
+
+  /** @return the encoding to request when joining a game, null for XML */
+  default String getEncoding() {
+    return null;
+  }
+
+  /** @return whether packets are serialized after {@link #send(ProtocolPacket)} returned,
+   *          so that they must not change afterwards */
+  default boolean isSendingLater() {
+    return false;
+  }
+
+  /** @return whether a {@link sc.protocol.room.DeltaMessage} can be sent instead of the full state */
+  default boolean isDeltaMementos() {
+    return false;
+  }
 }
@@ -3,6 +3,7 @@ package sc.networking.clients;
 import org.jetbrains.annotations.NotNull;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import sc.api.plugins.IDeltaGameState;
 import sc.api.plugins.IGameState;
 import sc.player.IGameHandler;
 import sc.player.IPlayerClient;
@@ -18,8 +19,10 @@ import sc.shared.GameResult;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.function.Consumer;
 import java.util.function.Function;
 
@@ -41,6 +44,12 @@ public final class LobbyClient extends XStreamClient implements IPollsHistory {
   private boolean keepAlive = true;
   private Consumer<ResponsePacket> administrativeListener = null;
   private final Map<String, Consumer<ObservableRoomMessage>> roomObservers = new HashMap<>();
+  /** The last state of each room, to apply a {@link DeltaMessage} to. */
+  private final Map<String, IGameState> states = new HashMap<>();
+  /** Rooms waiting for the full state after a {@link ResyncRequest}. */
+  private final Set<String> resyncing = new HashSet<>();
+  /** Rooms with a {@link MoveRequest} held back until their state is resynchronised. */
+  private final Set<String> pendingMoveRequests = new HashSet<>();
 
   public LobbyClient(String host, int port) throws IOException {
     super(createTcpNetwork(host, port));
@@ -89,6 +98,18 @@ public final class LobbyClient extends XStreamClient implements IPollsHistory {
       RoomPacket packet = (RoomPacket) message;
       String roomId = packet.getRoomId();
       RoomMessage data = packet.getData();
+      if (data instanceof DeltaMessage) {
+        data = applyDelta(roomId, (DeltaMessage) data);
+        if (data == null)
+          return;
+      } else if (data instanceof MementoMessage && isDeltaMementos()) {
+        states.put(roomId, ((MementoMessage) data).getState().clone());
+        resyncing.remove(roomId);
+      } else if (data instanceof MoveRequest && resyncing.contains(roomId)) {
+        logger.info("Holding back {} in room {} until its state is resynchronised", data, roomId);
+        pendingMoveRequests.add(roomId);
+        return;
+      }
      if(player != null) {
         // TODO run this in a background thread
         RoomMessage response = player.apply(data);
@@ -111,9 +132,14 @@ public final class LobbyClient extends XStreamClient implements IPollsHistory {
       } else {
         onRoomMessage(roomId, data);
       }
+      if (data instanceof MementoMessage && pendingMoveRequests.remove(roomId))
+        onObject(new RoomPacket(roomId, new MoveRequest()));
     } else if (message instanceof RemovedFromGame) {
       String roomId = ((RemovedFromGame) message).getRoomId();
       logger.info("Left {}", roomId);
+      states.remove(roomId);
+      resyncing.remove(roomId);
+      pendingMoveRequests.remove(roomId);
       if(!keepAlive)
         stop();
     } else if (message instanceof GamePreparedResponse) {
@@ -134,6 +160,36 @@ public final class LobbyClient extends XStreamClient implements IPollsHistory {
     }
   }
 
+  /**
+   * Requests the full state if the delta does not apply to the known state,
+   * subsequent deltas are then dropped until it arrives.
+   * @return the state resulting from the delta, or null if it does not apply to the known state
+   */
+  private MementoMessage applyDelta(String roomId, DeltaMessage message) {
+    IGameState state = states.remove(roomId);
+    if (state == null) {
+      if (!resyncing.contains(roomId)) {
+        logger.error("Received {} in room {} without knowing the previous state", message, roomId);
+        requestResync(roomId);
+      }
+      return null;
+    }
+    message.getDelta().applyTo(state);
+    long checksum = ((IDeltaGameState) state).getChecksum();
+    if (checksum != message.getChecksum()) {
+      logger.error("State in room {} diverged after {}, checksum {} instead of {}", roomId, message, checksum, message.getChecksum());
+      requestResync(roomId);
+      return null;
+    }
+    states.put(roomId, state);
+    return new MementoMessage(state.clone(), null);
+  }
+
+  private void requestResync(String roomId) {
+    resyncing.add(roomId);
+    sendMessageToRoom(roomId, new ResyncRequest());
+  }
+
   public void sendMessageToRoom(String roomId, RoomMessage o) {
     send(new RoomPacket(roomId, o));
   }
@@ -194,7 +250,7 @@ public final class LobbyClient extends XStreamClient implements IPollsHistory {
   }
 
   public void joinGameWithReservation(String reservation) {
-    send(new JoinPreparedRoomRequest(reservation));
+    send(new JoinPreparedRoomRequest(reservation, getEncoding(), isDeltaMementos() ? true : null));
   }
 
   public void joinGameRoom(String roomId) {
@@ -202,7 +258,7 @@ public final class LobbyClient extends XStreamClient implements IPollsHistory {
   }
 
   public void joinGame(String gameType) {
-    send(new JoinGameRequest(gameType));
+    send(new JoinGameRequest(gameType, getEncoding(), isDeltaMementos() ? true : null));
   }
 
   public void addListener(ILobbyClientListener listener) {
@@ -220,7 +276,7 @@ public final class LobbyClient extends XStreamClient implements IPollsHistory {
   public ObservingClient observe(String roomId, boolean isPaused) {
     ObservingClient observer = new ObservingClient(roomId, isPaused);
     addListener(observer);
-    send(new ObservationRequest(roomId));
+    send(new ObservationRequest(roomId, isDeltaMementos() ? true : null));
     return observer;
   }
 
@@ -5,33 +5,63 @@ import com.thoughtworks.xstream.XStreamException;
 import org.jetbrains.annotations.NotNull;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import sc.networking.INetworkInterface;
-import sc.networking.TcpNetwork;
-import sc.networking.UnprocessedPacketException;
-import sc.networking.XStreamProvider;
+import sc.framework.Threads;
+import sc.networking.*;
+import sc.protocol.BinaryEncoding;
 import sc.protocol.CloseConnection;
 import sc.protocol.ProtocolPacket;
 
-import java.io.EOFException;
-import java.io.IOException;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
+import java.io.*;
+import java.net.ProtocolException;
 import java.net.Socket;
 import java.net.SocketException;
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
 
 public abstract class XStreamClient implements IClient {
   private static Logger logger = LoggerFactory.getLogger(XStreamClient.class);
+  private static final int BUFFER_SIZE = 8192;
+  /** Queued after the last packet to let the {@link #sendThread} close the connection. */
+  private static final Object CLOSE = new Object();
+  /** How long a sender waits for space in a full queue with {@link OverflowPolicy#BLOCK},
+   * so that one slow client can hold up the thread of a game room only briefly. */
+  public static final long BLOCK_TIMEOUT_MILLIS = 1000;
+  /** How long the {@link #sendThread} may take to write the queued packets after {@link #close()}
+   * before the connection is closed regardless, so that a peer which stopped reading can't keep it open. */
+  public static final long CLOSE_TIMEOUT_MILLIS = 5000;
 
   public static INetworkInterface createTcpNetwork(String host, int port) throws IOException {
     logger.info("Creating TCP Network for {}:{}", host, port);
     return new TcpNetwork(new Socket(host, port));
   }
 
-  private final INetworkInterface networkInterface;
+  private final IOutputNetworkInterface networkInterface;
+  private final OutputBuffer output;
   private final ObjectOutputStream out;
   private final Thread receiveThread;
-  protected final XStream xStream = XStreamProvider.loadPluginXStream();
+  protected final XStream xStream = XStreamProvider.sharedXStream();
+
+  /** Whether to request the {@link BinaryProtocol} when joining a game. */
+  private boolean binaryEncoding = false;
+  /** Whether packets are sent with the {@link BinaryProtocol}. */
+  private volatile boolean binaryOutput = false;
+  /** Packets and raw data to be written by the {@link #sendThread}, null if the sending thread writes them itself.
+   * Set at most once, before the client is {@link #start() started}. */
+  private volatile BlockingQueue<Object> sendQueue = null;
+  private Thread sendThread = null;
+  private OverflowPolicy overflowPolicy;
+
+  /** Whether a {@link BinaryEncoding} has been sent, the switch happens once it is written. */
+  private boolean binaryAnnounced = false;
+  /** Whether the XML stream has been opened by writing a packet through {@link #out}. */
+  private boolean xmlStarted = false;
+  /** Whether game states may be sent as {@link sc.protocol.room.DeltaMessage}. */
+  private boolean deltaMementos = false;
 
   private DisconnectCause disconnectCause = DisconnectCause.NOT_DISCONNECTED;
   private boolean closed = false;
@@ -49,10 +79,20 @@ public abstract class XStreamClient implements IClient {
     PROTOCOL_ERROR,
     LOST_CONNECTION,
     TIMEOUT,
+    /** the other side did not receive packets as fast as they were sent, see {@link OverflowPolicy#DISCONNECT} */
+    SLOW_CONSUMER,
     NOT_CONNECTED,
     UNKNOWN
   }
 
+  /** What to do when a packet is sent while the {@link #enableSendQueue(int, OverflowPolicy) queue} is full. */
+  public enum OverflowPolicy {
+    /** wait until there is space again, but at most {@link #BLOCK_TIMEOUT_MILLIS} before disconnecting like {@link #DISCONNECT} */
+    BLOCK,
+    /** drop the queued packets and disconnect with {@link DisconnectCause#SLOW_CONSUMER} */
+    DISCONNECT
+  }
+
   public boolean isReady() {
     return ready;
   }
@@ -68,12 +108,29 @@ public abstract class XStreamClient implements IClient {
   }
 
   public XStreamClient(final INetworkInterface networkInterface) throws IOException {
+    this(networkInterface, true);
+  }
+
+  /**
+   * @param receive whether to start a thread reading packets from the input stream of the networkInterface,
+   *                which then has to be an {@link INetworkInterface}.
+   *                Without it, the transport has to hand over received packets via {@link #receiveFrame(Object)}.
+   */
+  protected XStreamClient(final IOutputNetworkInterface networkInterface, boolean receive) throws IOException {
     if (networkInterface == null)
       throw new IllegalArgumentException("networkInterface must not be null.");
+    if (receive && !(networkInterface instanceof INetworkInterface))
+      throw new IllegalArgumentException(networkInterface + " can not be read from.");
 
     this.networkInterface = networkInterface;
-    this.out = xStream.createObjectOutputStream(networkInterface.getOutputStream(), "protocol");
-    this.receiveThread = new Thread(new Runnable() {
+    this.output = new OutputBuffer(networkInterface.getOutputStream());
+    this.out = xStream.createObjectOutputStream(output, "protocol");
+    if (!receive) {
+      this.receiveThread = null;
+      return;
+    }
+    // a non-daemon receive thread keeps a client process alive, so it stays a platform thread
+    this.receiveThread = Threads.create("XStream-Receive", Thread.currentThread().isDaemon(), new Runnable() {
       @Override
       public void run() {
         try {
@@ -92,32 +149,35 @@ public abstract class XStreamClient implements IClient {
 
   /** Used by the receiving thread. All exceptions should be handled. */
   public void receiveThread() {
-    try (ObjectInputStream in = xStream.createObjectInputStream(networkInterface.getInputStream())) {
+    try (InputStream in = ((INetworkInterface) networkInterface).getInputStream()) {
       synchronized(readyLock) {
         while (!isReady()) {
           readyLock.wait();
         }
       }
 
+      PacketFramer framer = new PacketFramer();
+      String checkedElement = null;
+      byte[] buffer = new byte[BUFFER_SIZE];
       while (!Thread.interrupted()) {
-        Object object = in.readObject();
-        if (object instanceof ProtocolPacket) {
-          ProtocolPacket response = (ProtocolPacket) object;
-
-          logger.debug("Received {} via {}", response, networkInterface);
-          if (logger.isTraceEnabled())
-            logger.trace("Dumping {}:\n{}", response, xStream.toXML(response));
-
-          if (response instanceof CloseConnection) {
-            handleDisconnect(DisconnectCause.RECEIVED_DISCONNECT);
-            break;
-          } else {
-            onObject(response);
-          }
-        } else {
-          throw new ClassNotFoundException("Received object of unknown class " + object.getClass().getName());
+        int read = in.read(buffer);
+        if (read < 0)
+          throw new EOFException("Reached end of stream");
+        for (Object frame : framer.feed(ByteBuffer.wrap(buffer, 0, read))) {
+          if (!handleObject(decode(frame)))
+            return;
         }
+        // reject unknown packets right away instead of waiting for them to be complete
+        String element = framer.getOpenElement();
+        if (element != null && !element.equals(checkedElement)) {
+          checkedElement = element;
+          xStream.getMapper().realClass(element);
+        }
+        if (framer.isFinished())
+          throw new EOFException("The other side closed the protocol");
       }
+    } catch (ProtocolException e) {
+      handleDisconnect(DisconnectCause.PROTOCOL_ERROR, e);
     } catch (IOException e) {
       // The other side closed the connection.
       // It is better when the other side sends a CloseConnection message beforehand,
@@ -125,51 +185,107 @@ public abstract class XStreamClient implements IClient {
       // NOTE that a XStreamClient exists on both sides of the connection
       // (as a Client object on the server side and as a LobbyClient
       // object on the client side).
-      handleDisconnect(DisconnectCause.LOST_CONNECTION, e);
-    } catch (ClassNotFoundException e) {
+      // If this side closed the connection, the blocking read fails as well, which is a regular disconnect.
+      if (!isClosed())
+        handleDisconnect(DisconnectCause.LOST_CONNECTION, e);
+    } catch (ClassNotFoundException | XStreamException e) {
       handleDisconnect(DisconnectCause.PROTOCOL_ERROR, e);
-    } catch (XStreamException e) {
-      Throwable exceptionCause = e.getCause();
-      if (exceptionCause != null) {
-        if (exceptionCause instanceof SocketException) {
-          // If the thread was interrupted, we have a regular disconnect.
-          // Unfortunately, OIS.readObject() doesn't react to interruptions directly.
-          if (!Thread.interrupted())
-            handleDisconnect(DisconnectCause.LOST_CONNECTION, e);
-        } else if (exceptionCause instanceof EOFException) {
-          handleDisconnect(DisconnectCause.LOST_CONNECTION, e);
-        } else if (exceptionCause instanceof IOException
-            && exceptionCause.getCause() != null
-            && exceptionCause.getCause() instanceof InterruptedException) {
-          handleDisconnect(DisconnectCause.LOST_CONNECTION, e);
-        } else {
-          handleDisconnect(DisconnectCause.PROTOCOL_ERROR, e);
+    } catch (Exception e) {
+      logger.error("Unknown Communication Error", e);
+      handleDisconnect(DisconnectCause.UNKNOWN, e);
+    }
+  }
+
+  /**
+   * Processes a single packet as split off by a {@link PacketFramer}.
+   * Used by transports that read from the network themselves instead of the receive thread,
+   * errors are handled just like in {@link #receiveThread()}.
+   */
+  public void receiveFrame(Object frame) {
+    try {
+      synchronized(readyLock) {
+        while (!isReady() && !isClosed()) {
+          readyLock.wait();
         }
-      } else {
-        handleDisconnect(DisconnectCause.PROTOCOL_ERROR, e);
       }
+      if (!isClosed())
+        handleObject(decode(frame));
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } catch (ClassNotFoundException | XStreamException | ProtocolException e) {
+      handleDisconnect(DisconnectCause.PROTOCOL_ERROR, e);
     } catch (Exception e) {
       logger.error("Unknown Communication Error", e);
       handleDisconnect(DisconnectCause.UNKNOWN, e);
     }
   }
 
+  /** @param frame XML or a binary frame, see {@link PacketFramer#feed(ByteBuffer)} */
+  private Object decode(Object frame) throws ProtocolException {
+    if (frame instanceof String)
+      return xStream.fromXML((String) frame);
+    return getBinaryProtocol().decode((byte[]) frame);
+  }
+
+  /** Ends the connection because of an error the transport encountered, see {@link #receiveFrame(Object)}. */
+  public void abort(DisconnectCause cause, Throwable exception) {
+    if (!isClosed())
+      handleDisconnect(cause, exception);
+  }
+
+  /** @return false if the packet ended the connection */
+  private boolean handleObject(Object object) throws ClassNotFoundException, UnprocessedPacketException {
+    if (!(object instanceof ProtocolPacket))
+      throw new ClassNotFoundException("Received object of unknown class " + object.getClass().getName());
+
+    ProtocolPacket response = (ProtocolPacket) object;
+    logger.debug("Received {} via {}", response, networkInterface);
+    if (logger.isTraceEnabled())
+      logger.trace("Dumping {}:\n{}", response, xStream.toXML(response));
+
+    if (response instanceof CloseConnection) {
+      handleDisconnect(DisconnectCause.RECEIVED_DISCONNECT);
+      return false;
+    }
+    if (response instanceof BinaryEncoding) {
+      // the PacketFramer already reads binary frames from now on
+      if (binaryEncoding)
+        enableBinaryOutput();
+      return true;
+    }
+    onObject(response);
+    return true;
+  }
+
   public void sendCustomData(String data) throws IOException {
     logger.debug("Sending custom data: {}", data);
     sendCustomData(data.getBytes(StandardCharsets.UTF_8));
   }
 
+  /** Sends raw bytes, in order with the packets sent before. */
   public void sendCustomData(byte[] data) throws IOException {
     logger.info("Sending custom data ({} bytes)", data.length);
-    networkInterface.getOutputStream().write(data);
-    networkInterface.getOutputStream().flush();
+    if (!enqueue(data)) {
+      synchronized(this) {
+        if (!enqueue(data)) {
+          output.write(data);
+          output.send();
+        }
+      }
+    }
   }
 
   public void send(ProtocolPacket packet) {
     sendObject(packet);
   }
 
-  protected synchronized void sendObject(Object packet) {
+  /** Writes the bytes of the shared packet instead of serializing it again. */
+  @Override
+  public void send(SerializedPacket packet) {
+    sendObject(packet);
+  }
+
+  protected void sendObject(Object packet) {
     if (!isReady())
       throw new IllegalStateException(
           String.format("Trying to write packet %s on non-started client %s", packet, this));
@@ -184,16 +300,176 @@ public abstract class XStreamClient implements IClient {
     if (logger.isTraceEnabled())
       logger.trace("Dumping {}:\n{}", packet, xStream.toXML(packet));
 
+    if (enqueue(packet))
+      return;
+    synchronized(this) {
+      // checked again, as the queue must not be bypassed once its thread writes
+      if (enqueue(packet))
+        return;
+      try {
+        writePacket(packet);
+        output.send();
+      } catch (XStreamException e) {
+        handleDisconnect(DisconnectCause.PROTOCOL_ERROR, e);
+      } catch (IOException e) {
+        handleDisconnect(DisconnectCause.LOST_CONNECTION, e);
+      }
+    }
+  }
+
+  /** Hands the packet to the {@link #sendThread} according to the {@link #overflowPolicy}.
+   * @return false if there is no send queue, so the caller has to write the packet */
+  private boolean enqueue(Object packet) {
+    BlockingQueue<Object> queue = sendQueue;
+    if (queue == null)
+      return false;
+    boolean queued;
     try {
+      queued = overflowPolicy == OverflowPolicy.BLOCK ?
+          queue.offer(packet, BLOCK_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS) :
+          queue.offer(packet);
+    } catch (InterruptedException e) {
+      logger.warn("Interrupted while waiting to send {}, dropped it", packet);
+      Thread.currentThread().interrupt();
+      return true;
+    }
+    if (!queued)
+      handleDisconnect(DisconnectCause.SLOW_CONSUMER,
+          new IOException(queue.size() + " packets waiting to be sent, dropped " + packet));
+    return true;
+  }
+
+  /** Writes the packet or raw data to the {@link #output} without sending it. */
+  private void writePacket(Object packet) throws IOException {
+    if (packet instanceof byte[]) {
+      output.write((byte[]) packet);
+      return;
+    }
+    if (packet instanceof SerializedPacket && (binaryOutput || xmlStarted)) {
+      SerializedPacket shared = (SerializedPacket) packet;
+      output.write(binaryOutput ? shared.binary(getBinaryProtocol()) : shared.xml(xStream));
+      return;
+    }
+    if (packet instanceof SerializedPacket)
+      packet = ((SerializedPacket) packet).getPacket();
+    if (binaryOutput) {
+      output.write(getBinaryProtocol().encode(packet));
+    } else {
       this.out.writeObject(packet);
+      // only passes the XML on to the output buffer
       this.out.flush();
+      xmlStarted = true;
+      if (packet instanceof BinaryEncoding)
+        binaryOutput = true;
+    }
+  }
+
+  /**
+   * Lets a separate thread write all further packets, so that sending never waits for the network.
+   * Packets queued at the same time are sent together.
+   * Used by the server, so that a slow client does not hold up the others.
+   * Has to be called once before {@link #start()}, so that all packets take the same path.
+   *
+   * @param capacity how many packets may wait to be written
+   * @param overflowPolicy what to do when a packet is sent while the queue is full
+   */
+  public synchronized void enableSendQueue(int capacity, OverflowPolicy overflowPolicy) {
+    if (sendQueue != null || isReady())
+      throw new IllegalStateException("The send queue of " + this + " has to be enabled once before starting");
+    this.overflowPolicy = overflowPolicy;
+    this.sendThread = Threads.create("XStream-Send of " + shortString(), this::sendQueued);
+    this.sendQueue = new ArrayBlockingQueue<>(capacity);
+    this.sendThread.start();
+  }
+
+  /** Used by the {@link #sendThread} to write the queued packets until the client is closed. */
+  private void sendQueued() {
+    BlockingQueue<Object> queue = sendQueue;
+    List<Object> batch = new ArrayList<>();
+    boolean closedOutput = false;
+    try {
+      while (true) {
+        batch.add(queue.take());
+        queue.drainTo(batch);
+        for (Object packet : batch) {
+          if (packet == CLOSE) {
+            closedOutput = true;
+            closeOutput();
+            return;
+          }
+          writePacket(packet);
+        }
+        batch.clear();
+        output.send();
+      }
+    } catch (InterruptedException e) {
+      logger.debug("Stopped sending for {} with {} packets left", this, queue.size());
     } catch (XStreamException e) {
       handleDisconnect(DisconnectCause.PROTOCOL_ERROR, e);
     } catch (IOException e) {
-      handleDisconnect(DisconnectCause.LOST_CONNECTION, e);
+      if (!isClosed())
+        handleDisconnect(DisconnectCause.LOST_CONNECTION, e);
+    } finally {
+      // nobody else takes a CLOSE out of the queue anymore
+      if (!closedOutput)
+        closeNetwork();
     }
   }
 
+  /** Whether to request the {@link BinaryProtocol} when joining a game.
+   * The client switches once the server confirms it, otherwise it stays with XML. */
+  public void setBinaryEncoding(boolean binaryEncoding) {
+    this.binaryEncoding = binaryEncoding;
+  }
+
+  public boolean isBinaryEncoding() {
+    return binaryEncoding;
+  }
+
+  @Override
+  public String getEncoding() {
+    return binaryEncoding ? BinaryProtocol.ENCODING : null;
+  }
+
+  /** On a client, whether to request deltas when joining or observing a game.
+   * On the server, whether the client has requested them. */
+  public void setDeltaMementos(boolean deltaMementos) {
+    this.deltaMementos = deltaMementos;
+  }
+
+  @Override
+  public boolean isDeltaMementos() {
+    return deltaMementos;
+  }
+
+  @Override
+  public boolean isSendingLater() {
+    return sendQueue != null;
+  }
+
+  /** Whether packets are sent with the {@link BinaryProtocol}. */
+  public boolean isBinaryOutput() {
+    return binaryOutput;
+  }
+
+  /**
+   * Announces the switch to the {@link BinaryProtocol} with a {@link BinaryEncoding} packet
+   * and sends all further packets with it.
+   * Called by the server when a client requests it while joining a game,
+   * and by that client in reply.
+   */
+  public synchronized void enableBinaryOutput() {
+    if (binaryAnnounced || isClosed())
+      return;
+    logger.debug("Switching {} to the binary encoding", this);
+    binaryAnnounced = true;
+    sendObject(new BinaryEncoding());
+  }
+
+  private BinaryProtocol getBinaryProtocol() {
+    return XStreamProvider.sharedBinaryProtocol();
+  }
+
   protected final void handleDisconnect(DisconnectCause cause) {
     this.disconnectCause = cause;
 
@@ -234,14 +510,16 @@ public abstract class XStreamClient implements IClient {
   }
 
   protected synchronized void stopReceiver() {
-    logger.info("Stopping {}", receiveThread.getName());
-    if (this.receiveThread.getId() == Thread.currentThread().getId()) {
-      logger.warn("ReceiveThread is stopping itself");
-    }
     // unlock waiting threads
     synchronized(this.readyLock) {
       this.readyLock.notifyAll();
     }
+    if (this.receiveThread == null)
+      return;
+    logger.info("Stopping {}", receiveThread.getName());
+    if (this.receiveThread.getId() == Thread.currentThread().getId()) {
+      logger.warn("ReceiveThread is stopping itself");
+    }
     this.receiveThread.interrupt();
   }
 
@@ -253,23 +531,61 @@ public abstract class XStreamClient implements IClient {
 
       stopReceiver();
 
-      try {
-        if (this.out != null)
-          this.out.close();
-      } catch (Exception e) {
-        if (e.getCause() instanceof SocketException)
-          logger.debug("Can't close OUT, Socket already closed: {}", e.toString());
-        else
-          logger.warn("Failed to close OUT", e);
+      // let the send thread write the packets queued before, unless it is stuck
+      if (sendQueue == null) {
+        closeOutput();
+      } else if (Thread.currentThread() == sendThread) {
+        closeNetwork();
+      } else if (!sendQueue.offer(CLOSE)) {
+        sendThread.interrupt();
+        closeNetwork();
+      } else {
+        awaitSendThread();
       }
+    } else {
+      logger.warn("Attempted to close an already closed stream");
+    }
+  }
 
+  /** Closes the connection if the {@link #sendThread} has not written the queued packets
+   * within {@link #CLOSE_TIMEOUT_MILLIS}, which also ends a write blocked on the socket. */
+  private void awaitSendThread() {
+    Thread sender = sendThread;
+    Threads.create("XStream-Close of " + shortString(), () -> {
       try {
-        this.networkInterface.close();
-      } catch (Exception e) {
-        logger.warn("Failed to close " + networkInterface, e);
+        sender.join(CLOSE_TIMEOUT_MILLIS);
+      } catch (InterruptedException ignored) {
       }
-    } else {
-      logger.warn("Attempted to close an already closed stream");
+      if (sender.isAlive()) {
+        logger.warn("{} did not finish sending within {}ms, closing the connection", this, CLOSE_TIMEOUT_MILLIS);
+        sender.interrupt();
+        closeNetwork();
+      }
+    }).start();
+  }
+
+  /** Ends the XML document and closes the connection. */
+  private void closeOutput() {
+    try {
+      // closing the XML document would only corrupt the binary frames
+      if (binaryOutput)
+        output.send();
+      else
+        this.out.close();
+    } catch (Exception e) {
+      if (e.getCause() instanceof SocketException)
+        logger.debug("Can't close OUT, Socket already closed: {}", e.toString());
+      else
+        logger.warn("Failed to close OUT", e);
+    }
+    closeNetwork();
+  }
+
+  private void closeNetwork() {
+    try {
+      this.networkInterface.close();
+    } catch (Exception e) {
+      logger.warn("Failed to close " + networkInterface, e);
     }
   }
 
@@ -289,4 +605,26 @@ public abstract class XStreamClient implements IClient {
   public String toString() {
     return shortString();
   }
+
+  /** Collects the output until {@link #send()}, as XStream flushes after every packet. */
+  private static final class OutputBuffer extends BufferedOutputStream {
+    OutputBuffer(OutputStream network) {
+      super(network, BUFFER_SIZE);
+    }
+
+    @Override
+    public void flush() {
+    }
+
+    /** Writes the collected output to the network. */
+    void send() throws IOException {
+      super.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+      send();
+      super.close();
+    }
+  }
 }
@@ -0,0 +1,21 @@
+package sc.protocol
+
+import com.thoughtworks.xstream.annotations.XStreamAlias
+
+/**
+ * Is sent by one party as its last XML packet,
+ * all following packets are encoded with the [sc.networking.BinaryProtocol].
+ *
+ * This should not be sent manually, the XStreamClient sends it
+ * when the binary encoding has been negotiated while joining a game.
+ */
+@XStreamAlias(value = BinaryEncoding.ELEMENT)
+class BinaryEncoding: ProtocolPacket {
+    override fun equals(other: Any?) = other is BinaryEncoding
+    override fun hashCode(): Int = javaClass.hashCode()
+    override fun toString(): String = javaClass.simpleName
+    
+    companion object {
+        const val ELEMENT = "binary"
+    }
+}
@@ -35,12 +35,15 @@ object LobbyProtocol {
         
         // Messages
         registerAdditionalMessages(xStream, listOf(
+                BinaryEncoding::class.java,
                 RemovedFromGame::class.java,
                 RoomPacket::class.java,
+                DeltaMessage::class.java,
                 ErrorMessage::class.java,
                 GamePaused::class.java,
                 MementoMessage::class.java,
                 MoveRequest::class.java,
+                ResyncRequest::class.java,
                 WelcomeMessage::class.java,
         ))
         
@@ -64,6 +67,8 @@ object LobbyProtocol {
         if (protocolClasses != null) {
             for (clazz in protocolClasses) {
                 xStream.processAnnotations(clazz)
+                // caches the converter, which would otherwise be looked up on first use
+                xStream.converterLookup.lookupConverterForType(clazz)
             }
         }
         return xStream
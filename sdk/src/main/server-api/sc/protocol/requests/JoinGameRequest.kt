@@ -8,7 +8,13 @@ import com.thoughtworks.xstream.annotations.XStreamAsAttribute
  * Creates a new gameRoom if no open gameRoom of the specified gameType exists.
  */
 @XStreamAlias("join")
-data class JoinGameRequest(
+data class JoinGameRequest @JvmOverloads constructor(
         @XStreamAsAttribute
-        val gameType: String?
+        val gameType: String?,
+        /** The encoding requested for further packets, [sc.networking.BinaryProtocol.ENCODING] or null for XML. */
+        @XStreamAsAttribute
+        val encoding: String? = null,
+        /** Whether the client accepts a [sc.protocol.room.DeltaMessage] instead of the full state. */
+        @XStreamAsAttribute
+        val deltas: Boolean? = null,
 ): ILobbyRequest
\ No newline at end of file
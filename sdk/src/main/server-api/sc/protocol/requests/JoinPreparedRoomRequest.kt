@@ -9,7 +9,13 @@ import com.thoughtworks.xstream.annotations.XStreamAsAttribute
  * that created the game via a PrepareGameRequest.
  */
 @XStreamAlias("joinPrepared")
-data class JoinPreparedRoomRequest(
+data class JoinPreparedRoomRequest @JvmOverloads constructor(
         @XStreamAsAttribute
-        val reservationCode: String
+        val reservationCode: String,
+        /** The encoding requested for further packets, [sc.networking.BinaryProtocol.ENCODING] or null for XML. */
+        @XStreamAsAttribute
+        val encoding: String? = null,
+        /** Whether the client accepts a [sc.protocol.room.DeltaMessage] instead of the full state. */
+        @XStreamAsAttribute
+        val deltas: Boolean? = null,
 ): ILobbyRequest
@@ -5,7 +5,10 @@ import com.thoughtworks.xstream.annotations.XStreamAsAttribute
 
 /** Request by administrative client to observe a gameRoom specified by given roomId. */
 @XStreamAlias("observe")
-data class ObservationRequest(
+data class ObservationRequest @JvmOverloads constructor(
         @XStreamAsAttribute
-        val roomId: String
+        val roomId: String,
+        /** Whether the client accepts a [sc.protocol.room.DeltaMessage] instead of the full state. */
+        @XStreamAsAttribute
+        val deltas: Boolean? = null,
 ): AdminLobbyRequest
@@ -0,0 +1,19 @@
+package sc.protocol.room
+
+import com.thoughtworks.xstream.annotations.XStreamAlias
+import com.thoughtworks.xstream.annotations.XStreamAsAttribute
+import sc.api.plugins.IDeltaGameState
+import sc.api.plugins.IStateDelta
+
+/**
+ * Sent instead of a [MementoMessage] to clients which accept deltas and have the previous state.
+ * They apply the [delta] to it and compare the [checksum] to detect divergence.
+ * Clients still receive the full state periodically.
+ */
+@XStreamAlias("delta")
+data class DeltaMessage(
+        val delta: IStateDelta,
+        /** The [IDeltaGameState.checksum] of the new state. */
+        @XStreamAsAttribute
+        val checksum: Long,
+): ObservableRoomMessage
@@ -0,0 +1,10 @@
+package sc.protocol.room
+
+import com.thoughtworks.xstream.annotations.XStreamAlias
+
+/** Request the full state of a room after a [DeltaMessage] could not be applied. */
+@XStreamAlias(value = "resync")
+class ResyncRequest: RoomMessage {
+    override fun equals(other: Any?) = other is ResyncRequest
+    override fun hashCode(): Int = javaClass.hashCode()
+}
@@ -0,0 +1,44 @@
+package sc.api
+
+import io.kotest.core.spec.style.FunSpec
+import io.kotest.matchers.shouldBe
+import io.kotest.matchers.types.shouldBeSameInstanceAs
+import sc.api.plugins.Coordinates
+import sc.api.plugins.DoubledHexGrid
+import sc.api.plugins.PackedCoordinates
+import sc.api.plugins.Vector
+
+class DoubledHexGridTest: FunSpec({
+    val grid = DoubledHexGrid.of(8, 8)
+    test("is shared per size") {
+        DoubledHexGrid.of(8, 8) shouldBeSameInstanceAs grid
+    }
+    test("maps coordinates to indices") {
+        grid.index(0, 0) shouldBe 0
+        grid.index(1, 1) shouldBe 8
+        grid.index(15, 7) shouldBe 63
+        grid.index(1, 0) shouldBe -1
+        grid.index(-2, 0) shouldBe -1
+        grid.index(16, 0) shouldBe -1
+        grid.x(8) shouldBe 1
+        grid.y(8) shouldBe 1
+        grid.index(PackedCoordinates.of(3, 1)) shouldBe 9
+    }
+    test("lists neighbors") {
+        var count = 0
+        grid.forEachNeighbor(0) { count++ }
+        count shouldBe 2
+        grid.neighbor(0, Vector.DoubledHex.directions.indexOf(Vector.DoubledHex.LEFT)) shouldBe 1
+        grid.neighbor(0, Vector.DoubledHex.directions.indexOf(Vector.DoubledHex.RIGHT)) shouldBe -1
+    }
+    test("follows rays to the border") {
+        val direction = Vector.DoubledHex.directions.indexOf(Vector.DoubledHex.DOWN_RIGHT)
+        grid.rayLength(0, direction) shouldBe 7
+        (1..7).map { grid.rayTarget(0, direction, it) } shouldBe (1..7).map { grid.index(it, it) }
+    }
+    test("packs coordinates") {
+        val coordinates = Coordinates(-3, 12)
+        Coordinates.unpack(coordinates.packed) shouldBe coordinates
+        PackedCoordinates.of(coordinates).plus(Vector(5, -14)).toCoordinates() shouldBe Coordinates(2, -2)
+    }
+})
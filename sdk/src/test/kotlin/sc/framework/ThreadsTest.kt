@@ -0,0 +1,26 @@
+package sc.framework
+
+import io.kotest.core.spec.style.FunSpec
+import io.kotest.matchers.booleans.*
+import io.kotest.matchers.shouldBe
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.TimeUnit
+
+class ThreadsTest: FunSpec({
+    afterTest { Threads.virtual = false }
+    listOf(false, true).forEach { virtual ->
+        test("creates runnable threads (virtual=$virtual)") {
+            Threads.virtual = virtual
+            val latch = CountDownLatch(1)
+            val thread = Threads.create("test") { latch.countDown() }
+            thread.name shouldBe "test"
+            thread.isDaemon.shouldBeTrue()
+            thread.start()
+            latch.await(1, TimeUnit.SECONDS).shouldBeTrue()
+        }
+        test("keeps non-daemon threads on the platform (virtual=$virtual)") {
+            Threads.virtual = virtual
+            Threads.create("test", false) {}.isDaemon.shouldBeFalse()
+        }
+    }
+})
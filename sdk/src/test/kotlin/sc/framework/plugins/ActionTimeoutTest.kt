@@ -0,0 +1,48 @@
+package sc.framework.plugins
+
+import io.kotest.core.spec.style.FunSpec
+import io.kotest.matchers.booleans.*
+import io.kotest.matchers.longs.*
+import io.kotest.matchers.shouldBe
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.Executors
+import java.util.concurrent.TimeUnit
+
+class ActionTimeoutTest: FunSpec({
+    test("runs the callback on hard timeout") {
+        val latch = CountDownLatch(1)
+        val timeout = ActionTimeout(true, 50, 20)
+        timeout.start { latch.countDown() }
+        latch.await(1, TimeUnit.SECONDS).shouldBeTrue()
+        timeout.didTimeout().shouldBeTrue()
+        timeout.timeDiff shouldBeGreaterThanOrEqual 50
+    }
+    test("hands the callback to the given executor") {
+        val latch = CountDownLatch(1)
+        var thread: Thread? = null
+        val executor = Executors.newSingleThreadExecutor { Thread(it, "callback") }
+        val timeout = ActionTimeout(true, 20, 20)
+        timeout.start({
+            thread = Thread.currentThread()
+            latch.countDown()
+        }, executor)
+        latch.await(1, TimeUnit.SECONDS).shouldBeTrue()
+        thread?.name shouldBe "callback"
+        executor.shutdown()
+    }
+    test("does not time out when stopped in time") {
+        val latch = CountDownLatch(1)
+        val timeout = ActionTimeout(true, 50, 20)
+        timeout.start { latch.countDown() }
+        timeout.stop()
+        timeout.didTimeout().shouldBeFalse()
+        latch.await(100, TimeUnit.MILLISECONDS).shouldBeFalse()
+    }
+    test("never times out if not allowed to") {
+        val timeout = ActionTimeout(false, 1, 1)
+        timeout.start { throw AssertionError("Timed out") }
+        Thread.sleep(20)
+        timeout.stop()
+        timeout.didTimeout().shouldBeFalse()
+    }
+})
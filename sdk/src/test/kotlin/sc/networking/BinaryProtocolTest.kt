@@ -0,0 +1,50 @@
+package sc.networking
+
+import io.kotest.assertions.throwables.shouldThrow
+import io.kotest.core.spec.style.FunSpec
+import io.kotest.matchers.booleans.*
+import io.kotest.matchers.collections.*
+import io.kotest.matchers.shouldBe
+import sc.api.plugins.Team
+import sc.protocol.room.MoveRequest
+import sc.protocol.room.RoomPacket
+import sc.protocol.room.WelcomeMessage
+import java.net.ProtocolException
+import java.nio.ByteBuffer
+
+class BinaryProtocolTest: FunSpec({
+    val protocol = BinaryProtocol(XStreamProvider.getBasicXStream(), emptyList())
+    fun PacketFramer.feed(data: ByteArray) = feed(ByteBuffer.wrap(data))
+    
+    test("round-trips varints") {
+        val values = listOf(0, 1, 127, 128, 300, Int.MAX_VALUE, -1, Int.MIN_VALUE)
+        val output = BinaryOutput(protocol)
+        values.forEach { output.writeVarint(it) }
+        output.size shouldBe 1 + 1 + 1 + 2 + 2 + 5 + 5 + 5
+        val input = BinaryInput(protocol, output.toByteArray())
+        values.map { input.readVarint() } shouldBe values
+        input.remaining shouldBe 0
+    }
+    test("switches from XML to binary frames") {
+        val packets = listOf(RoomPacket("a", MoveRequest()), RoomPacket("b", WelcomeMessage(Team.TWO)))
+        val framer = PacketFramer()
+        val frames = framer.feed("<protocol>\n  <join/>\n  <binary/>".toByteArray() + packets.map { protocol.encode(it) }.reduce(ByteArray::plus))
+        framer.isBinary.shouldBeTrue()
+        frames[0] shouldBe "<join/>"
+        frames[1] shouldBe "<binary/>"
+        frames.drop(2).map { protocol.decode(it as ByteArray) } shouldBe packets
+    }
+    test("handles frames split at any byte") {
+        val packet = RoomPacket("room", WelcomeMessage(Team.ONE))
+        val framer = PacketFramer()
+        val data = "<protocol><binary/>".toByteArray() + protocol.encode(packet) + protocol.encode(packet)
+        val frames = data.flatMap { framer.feed(byteArrayOf(it)) }
+        frames.map { protocol.decode(it as ByteArray) }.shouldContainExactly(packet, packet)
+    }
+    test("rejects invalid frames") {
+        shouldThrow<ProtocolException> { protocol.decode(byteArrayOf(99)) }
+        // without the length and the tag of the data
+        shouldThrow<ProtocolException> { protocol.decode(protocol.encode(RoomPacket("a", MoveRequest())).drop(1).dropLast(1).toByteArray()) }
+        shouldThrow<ProtocolException> { PacketFramer(16).feed("<protocol><binary/>".toByteArray() + byteArrayOf(17)) }
+    }
+})
@@ -0,0 +1,27 @@
+package sc.networking
+
+import io.kotest.core.spec.style.FunSpec
+import io.kotest.matchers.shouldBe
+import io.kotest.matchers.types.shouldBeSameInstanceAs
+import sc.protocol.room.MoveRequest
+import sc.protocol.room.RoomPacket
+
+class SerializedPacketTest: FunSpec({
+    val xStream = XStreamProvider.getBasicXStream()
+    val packet = RoomPacket("room", MoveRequest())
+    
+    test("serializes XML once") {
+        val shared = SerializedPacket(packet)
+        val xml = shared.xml(xStream)
+        String(xml, Charsets.UTF_8) shouldBe """<room roomId="room"><data class="moveRequest"/></room>"""
+        xStream.fromXML(String(xml, Charsets.UTF_8)) shouldBe packet
+        shared.xml(xStream) shouldBeSameInstanceAs xml
+    }
+    test("serializes binary frames once") {
+        val protocol = BinaryProtocol(xStream, emptyList())
+        val shared = SerializedPacket(packet)
+        val frame = shared.binary(protocol)
+        frame.toList() shouldBe protocol.encode(packet).toList()
+        shared.binary(protocol) shouldBeSameInstanceAs frame
+    }
+})
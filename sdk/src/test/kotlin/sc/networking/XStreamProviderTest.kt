@@ -0,0 +1,28 @@
+package sc.networking
+
+import io.kotest.core.spec.style.FunSpec
+import io.kotest.matchers.collections.shouldContainOnly
+import io.kotest.matchers.types.shouldBeSameInstanceAs
+import sc.api.plugins.Team
+import sc.protocol.room.RoomPacket
+import sc.protocol.room.WelcomeMessage
+import kotlin.concurrent.thread
+
+class XStreamProviderTest: FunSpec({
+    test("shares one instance") {
+        XStreamProvider.sharedXStream() shouldBeSameInstanceAs XStreamProvider.sharedXStream()
+        XStreamProvider.sharedBinaryProtocol() shouldBeSameInstanceAs XStreamProvider.sharedBinaryProtocol()
+    }
+    test("shared instance can be used concurrently") {
+        val xStream = XStreamProvider.sharedXStream()
+        val results = ArrayList<Any>()
+        (1..8).map { index ->
+            thread {
+                val packet = RoomPacket("room$index", WelcomeMessage(Team.values()[index % 2]))
+                val copies = List(100) { xStream.fromXML(xStream.toXML(packet)) == packet }
+                synchronized(results) { results.addAll(copies) }
+            }
+        }.forEach { it.join() }
+        results shouldContainOnly listOf(true)
+    }
+})
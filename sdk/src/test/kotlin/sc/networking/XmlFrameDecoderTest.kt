@@ -0,0 +1,51 @@
+package sc.networking
+
+import io.kotest.assertions.throwables.shouldThrow
+import io.kotest.core.spec.style.FunSpec
+import io.kotest.matchers.booleans.*
+import io.kotest.matchers.collections.*
+import io.kotest.matchers.nulls.shouldBeNull
+import io.kotest.matchers.shouldBe
+import java.net.ProtocolException
+import java.nio.ByteBuffer
+
+class XmlFrameDecoderTest: FunSpec({
+    fun XmlFrameDecoder.feed(data: String) = feed(ByteBuffer.wrap(data.toByteArray()))
+    
+    test("splits packets") {
+        val decoder = XmlFrameDecoder()
+        decoder.feed("<?xml version='1.0'?>\n<protocol>\n  <join gameType=\"swc\"/>").shouldContainExactly("<join gameType=\"swc\"/>")
+        decoder.feed("<room roomId=\"a\"><data class=\"move\"><to x=\"1\"/></data></room>  <close/>").shouldContainExactly(
+                "<room roomId=\"a\"><data class=\"move\"><to x=\"1\"/></data></room>", "<close/>")
+        decoder.isFinished.shouldBeFalse()
+        decoder.feed("</protocol>").shouldBeEmpty()
+        decoder.isFinished.shouldBeTrue()
+        decoder.feed("<close/>").shouldBeEmpty()
+    }
+    test("handles packets split at any byte") {
+        val packet = "<room roomId=\"ä>\"><!-- <a> --><data><![CDATA[</room>]]></data><b attr='/>'/></room>"
+        val decoder = XmlFrameDecoder()
+        val frames = "<protocol>$packet$packet".map { decoder.feed(it.toString()) }.flatten()
+        frames.shouldContainExactly(packet, packet)
+    }
+    test("reports incomplete packets") {
+        val decoder = XmlFrameDecoder()
+        decoder.feed("<protocol><yarr>").shouldBeEmpty()
+        decoder.openElement shouldBe "yarr"
+        decoder.feed("</yarr>").shouldHaveSize(1)
+        decoder.openElement.shouldBeNull()
+    }
+    test("stops after the switch element") {
+        val decoder = XmlFrameDecoder(switchElement = "binary")
+        decoder.feed("<protocol><join/><binary/>\u0001x").shouldContainExactly("<join/>", "<binary/>")
+        decoder.isSwitched.shouldBeTrue()
+        decoder.takeRemaining() shouldBe ByteBuffer.wrap(byteArrayOf(1, 'x'.code.toByte()))
+    }
+    test("limits the packet size") {
+        val decoder = XmlFrameDecoder(16)
+        decoder.feed("<protocol><a>").shouldBeEmpty()
+        shouldThrow<ProtocolException> {
+            decoder.feed("a".repeat(16))
+        }
+    }
+})
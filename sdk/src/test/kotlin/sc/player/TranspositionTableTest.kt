@@ -0,0 +1,38 @@
+package sc.player
+
+import io.kotest.assertions.throwables.shouldThrow
+import io.kotest.core.spec.style.FunSpec
+import io.kotest.matchers.shouldBe
+import sc.api.plugins.Zobrist
+
+class TranspositionTableTest: FunSpec({
+    test("rounds capacity up to a power of two") {
+        TranspositionTable(1).capacity shouldBe 1
+        TranspositionTable(1000).capacity shouldBe 1024
+        TranspositionTable(1024).capacity shouldBe 1024
+    }
+    test("stores and replaces entries") {
+        val table = TranspositionTable(16)
+        val key = Zobrist.key(3, 1)
+        table[key] shouldBe TranspositionTable.MISSING
+        table[key] = 42
+        table[key] shouldBe 42
+        table[key xor 1] shouldBe TranspositionTable.MISSING
+        table[key] = 0
+        table[key] shouldBe 0
+        table.clear()
+        table[key] shouldBe TranspositionTable.MISSING
+    }
+    test("does not confuse colliding keys") {
+        val table = TranspositionTable(1)
+        table[Zobrist.key(0, 0)] = 1
+        table[Zobrist.key(0, 1)] = 2
+        table[Zobrist.key(0, 0)] shouldBe TranspositionTable.MISSING
+        table[Zobrist.key(0, 1)] shouldBe 2
+    }
+    test("rejects the missing marker") {
+        shouldThrow<IllegalArgumentException> {
+            TranspositionTable(1)[0] = TranspositionTable.MISSING
+        }
+    }
+})
@@ -5,6 +5,8 @@ import jargs.gnu.CmdLineParser.IllegalOptionValueException;
 import jargs.gnu.CmdLineParser.UnknownOptionException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import sc.framework.Threads;
+import sc.networking.XStreamProvider;
 import sc.shared.SharedConfiguration;
 
 import java.io.File;
@@ -39,6 +41,8 @@ public final class Application {
     long start = System.currentTimeMillis();
 
     Configuration.loadServerProperties();
+    Threads.setVirtual(Configuration.getVirtualThreads());
+    XStreamProvider.setCompactXml(Configuration.getCompactXml());
 
     final Lobby server = new Lobby();
     try {
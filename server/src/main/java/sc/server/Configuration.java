@@ -2,6 +2,9 @@ package sc.server;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import sc.framework.Threads;
+import sc.networking.XStreamProvider;
+import sc.networking.clients.XStreamClient;
 import sc.shared.SharedConfiguration;
 
 import java.io.File;
@@ -30,6 +33,14 @@ public class Configuration {
   public static final String PAUSED = "paused";
   public static final String TIMEOUT = "timeout";
   public static final String LISTEN_LOCAL_KEY = "local";
+  public static final String NIO_KEY = "nio";
+  public static final String NIO_WORKERS_KEY = "nioWorkers";
+  public static final String NIO_OUTPUT_LIMIT_KEY = "nioOutputLimit";
+  public static final String VIRTUAL_THREADS_KEY = "virtualThreads";
+  public static final String SEND_QUEUE_KEY = "sendQueue";
+  public static final String SLOW_CLIENTS_KEY = "slowClients";
+  public static final String RESERVATION_TIMEOUT_KEY = "reservationTimeout";
+  public static final String COMPACT_XML_KEY = "compactXml";
 
   public static final String PASSWORD_KEY = "password";
   public static final String PORT_KEY = "port";
@@ -66,6 +77,49 @@ public class Configuration {
     return get(LISTEN_LOCAL_KEY, Boolean.class, true);
   }
 
+  /** Whether to serve all connections from a selector instead of a thread per connection. */
+  public static boolean getNio() {
+    return get(NIO_KEY, Boolean.class, false);
+  }
+
+  /** Number of threads processing received packets when {@link #getNio() nio} is enabled. */
+  public static int getNioWorkers() {
+    return get(NIO_WORKERS_KEY, Integer.class, Runtime.getRuntime().availableProcessors());
+  }
+
+  /** How many bytes may wait to be sent to a client when {@link #getNio() nio} is enabled,
+   * beyond that {@link #getSlowClients()} applies like for a full {@link #getSendQueue() send queue}. */
+  public static int getNioOutputLimit() {
+    return get(NIO_OUTPUT_LIMIT_KEY, Integer.class, 4 * 1024 * 1024);
+  }
+
+  /** Whether receive loops, timeouts and services should run on virtual threads, see {@link Threads}. */
+  public static boolean getVirtualThreads() {
+    return get(VIRTUAL_THREADS_KEY, Boolean.class, Threads.getVirtual());
+  }
+
+  /** How many packets may wait to be sent to a client of the blocking transport,
+   * 0 to send on the calling thread, for game updates a room worker shared by all rooms. */
+  public static int getSendQueue() {
+    return get(SEND_QUEUE_KEY, Integer.class, 1024);
+  }
+
+  /** What to do with clients whose send queue is full, either "disconnect" or "block". */
+  public static XStreamClient.OverflowPolicy getSlowClients() {
+    return XStreamClient.OverflowPolicy.valueOf(get(SLOW_CLIENTS_KEY, String.class, "disconnect").toUpperCase());
+  }
+
+  /** Seconds after which unredeemed reservations of prepared games expire, 0 to keep them forever. */
+  public static int getReservationTimeout() {
+    return get(RESERVATION_TIMEOUT_KEY, Integer.class, 24 * 60 * 60);
+  }
+
+  /** Whether the plugin may write game data in a more compact XML which older clients can't read,
+   * see {@link XStreamProvider#getCompactXml()}. */
+  public static boolean getCompactXml() {
+    return get(COMPACT_XML_KEY, Boolean.class, false);
+  }
+
   public static String getPluginPath() {
     return get(PLUGIN_PATH_KEY, String.class, PLUGIN_PATH_DEFAULT_KEY);
   }
@@ -3,8 +3,10 @@ package sc.server
 import sc.api.plugins.IMove
 import sc.api.plugins.exceptions.GameRoomException
 import sc.api.plugins.exceptions.RescuableClientException
+import sc.networking.BinaryProtocol
 import sc.protocol.ProtocolPacket
 import sc.protocol.requests.*
+import sc.protocol.room.ResyncRequest
 import sc.protocol.room.RoomPacket
 import sc.server.gaming.GameRoomManager
 import sc.server.gaming.ReservationManager
@@ -23,9 +25,15 @@ class Lobby: GameRoomManager(), Closeable, IClientRequestListener {
     }
     
     private fun notifyObservers(packet: ProtocolPacket) =
-            clientManager.clients
-                    .filter { it.isAdministrator }
-                    .forEach { it.send(packet) }
+            clientManager.administrators.forEach { it.send(packet) }
+    
+    /** Applies the options requested when joining or observing a game, unknown encodings keep XML. */
+    private fun negotiate(client: Client, encoding: String?, deltas: Boolean?) {
+        if(encoding == BinaryProtocol.ENCODING)
+            client.enableBinaryOutput()
+        if(deltas == true)
+            client.isDeltaMementos = true
+    }
     
     /** Handle requests or moves of clients.
      * @throws RescuableClientException if something goes wrong.
@@ -34,19 +42,21 @@ class Lobby: GameRoomManager(), Closeable, IClientRequestListener {
     override fun onRequest(source: Client, callback: PacketCallback) {
         when (val packet = callback.packet) {
             is RoomPacket -> {
-                // i.e. new move
                 val room = this.findRoom(packet.roomId)
-                val move = packet.data
-                if(move !is IMove)
-                    throw GameRoomException("Received non-move packet: $packet")
-                room.onEvent(source, move)
+                when(val data = packet.data) {
+                    // i.e. new move
+                    is IMove -> room.submitEvent(source, data)
+                    is ResyncRequest -> room.submit { room.resync(source) }
+                    else -> throw GameRoomException("Received non-move packet: $packet")
+                }
             }
-            is JoinPreparedRoomRequest ->
+            is JoinPreparedRoomRequest -> {
+                negotiate(source, packet.encoding, packet.deltas)
                 ReservationManager.redeemReservationCode(source, packet.reservationCode)
-            is JoinRoomRequest ->
-                if(!this.findRoom(packet.roomId).join(source))
-                    throw GameRoomException("Room ${packet.roomId} is already full!")
+            }
+            is JoinRoomRequest -> joinRoom(source, packet.roomId)
             is JoinGameRequest -> {
+                negotiate(source, packet.encoding, packet.deltas)
                 joinOrCreateGame(source, packet.gameType)
                         ?.let { notifyObservers(it) }
             }
@@ -59,22 +69,23 @@ class Lobby: GameRoomManager(), Closeable, IClientRequestListener {
                         source.send(this.prepareGame(packet))
                     }
                     is ObservationRequest -> {
+                        negotiate(source, null, packet.deltas)
                         val room = this.findRoom(packet.roomId)
                         room.addObserver(source)
                     }
                     is PauseGameRequest -> {
                         val room = this.findRoom(packet.roomId)
-                        room.pause(packet.pause)
+                        room.submit { room.pause(packet.pause) }
                     }
                     is StepRequest -> {
                         // TODO check for a prior pending StepRequest
                         val room = this.findRoom(packet.roomId)
-                        room.step(packet.forced)
+                        room.submit { room.step(packet.forced) }
                     }
                     is CancelRequest -> {
                         requireNotNull(packet.roomId) { "Can't cancel a game with roomId null!" }
                         val room = this.findRoom(packet.roomId)
-                        room.cancel()
+                        room.submit { room.cancel() }
                     }
                 }
             }
@@ -83,5 +94,8 @@ class Lobby: GameRoomManager(), Closeable, IClientRequestListener {
         callback.setProcessed()
     }
     
-    override fun close() = clientManager.close()
+    override fun close() {
+        clientManager.close()
+        ReservationManager.shutdown()
+    }
 }
@@ -2,6 +2,7 @@ package sc.server;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import sc.framework.Threads;
 
 import java.util.ArrayList;
 import java.util.HashSet;
@@ -29,9 +30,7 @@ public abstract class ServiceManager {
     logger.debug("Spawning thread for new service (name={}, daemon={})",
             name, daemon);
 
-    Thread thread = new Thread(target);
-    thread.setName(name);
-    thread.setDaemon(daemon);
+    Thread thread = Threads.create(name, daemon, target);
     threads.add(thread);
     return thread;
   }
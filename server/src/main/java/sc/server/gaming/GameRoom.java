@@ -2,50 +2,79 @@ package sc.server.gaming;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import sc.api.plugins.IDeltaGameState;
 import sc.api.plugins.IGameInstance;
 import sc.api.plugins.IGameState;
 import sc.api.plugins.IMove;
+import sc.api.plugins.IStateDelta;
 import sc.api.plugins.exceptions.GameException;
 import sc.api.plugins.exceptions.GameLogicException;
 import sc.api.plugins.exceptions.GameRoomException;
+import sc.api.plugins.exceptions.RescuableClientException;
 import sc.api.plugins.exceptions.TooManyPlayersException;
 import sc.api.plugins.host.IGameListener;
 import sc.framework.HelperMethods;
 import sc.framework.ReplayListener;
 import sc.framework.plugins.Pausable;
 import sc.framework.plugins.Player;
+import sc.networking.SerializedPacket;
 import sc.networking.clients.IClient;
 import sc.networking.clients.XStreamClient;
 import sc.protocol.ProtocolPacket;
 import sc.protocol.RemovedFromGame;
+import sc.protocol.responses.ErrorPacket;
 import sc.protocol.responses.JoinedRoomResponse;
 import sc.protocol.responses.ObservationResponse;
 import sc.protocol.room.*;
 import sc.server.Configuration;
 import sc.server.network.Client;
+import sc.server.network.IClientListener;
 import sc.shared.*;
 
 import java.io.*;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
 /**
  * A wrapper for an actual <code>GameInstance</code>. GameInstances are provided
  * by the plugins. Additional mapping data (Client2Player) will be stored here.
+ *
+ * Everything that changes the room or its game runs on its {@link Mailbox}, see {@link #submit(Runnable)},
+ * including timeouts of the game. Hence the room needs no locks,
+ * and only the seats claimed during matchmaking are counted atomically.
  */
 public class GameRoom implements IGameListener {
   private static final Logger logger = LoggerFactory.getLogger(GameRoom.class);
+  /** Every this many state changes, all clients receive the full state instead of a {@link DeltaMessage}. */
+  private static final int KEYFRAME_INTERVAL = 10;
 
   private final String id;
   private final GameRoomManager gameRoomManager;
   private final ScoreDefinition scoreDefinition;
   private final List<PlayerSlot> playerSlots = new ArrayList<>(getMaximumPlayerCount());
-  private GameStatus status = GameStatus.CREATED;
-  private GameResult result;
+  private volatile GameStatus status = GameStatus.CREATED;
+  /** Seats which clients without reservation can still {@link #claimSeat() claim}. */
+  private final AtomicInteger vacancies = new AtomicInteger(getMaximumPlayerCount());
+  private volatile GameResult result;
+  /** Handles requests from the network in order, see {@link #submit(Runnable)}. */
+  private final Mailbox mailbox = new Mailbox();
   private final ReplayListener<RoomPacket> replayListener = Boolean.parseBoolean(Configuration.get(Configuration.SAVE_REPLAY)) ? new ReplayListener<>() : null;
 
   public final IGameInstance game; // TODO make inaccessible
-  public final List<IClient> observers = new ArrayList<>();
+  public final List<IClient> observers = new CopyOnWriteArrayList<>();
+
+  /** Copy of the last state, to compute the next {@link DeltaMessage} from. */
+  private IDeltaGameState lastState = null;
+  private int deltasSinceKeyframe = 0;
+  /** Checksum of the last state each client accepting deltas received, until it leaves. */
+  private final Map<IClient, Long> clientStates = new HashMap<>();
+  /** Forgets observers which disconnected. */
+  private final IClientListener observerListener = (source, cause) -> submit(() -> removeObserver(source));
 
   public enum GameStatus {
     CREATED, ACTIVE, OVER
@@ -58,11 +87,12 @@ public class GameRoom implements IGameListener {
     this.scoreDefinition = scoreDefinition;
     this.game = game;
     game.addGameListener(this);
+    game.setTimeoutExecutor(this::submit);
   }
 
   /** Generate GameResult, set status to OVER and close the room. */
   @Override
-  public synchronized void onGameOver(Map<Player, PlayerScore> results) {
+  public void onGameOver(Map<Player, PlayerScore> results) {
     if (isOver()) {
       logger.warn("{} received an extra GameOver-Event", game);
       return;
@@ -121,15 +151,17 @@ public class GameRoom implements IGameListener {
     broadcast(createRoomPacket(message));
   }
 
-  /** Send ProtocolMessage to all listeners. */
+  /** Send ProtocolMessage to all listeners, serializing it only once. */
   private void broadcast(ProtocolPacket packet) {
-    playerSlots.forEach(slot -> slot.sendPacket(packet));
-    observers.forEach(observer -> observer.send(packet));
+    SerializedPacket shared = new SerializedPacket(packet);
+    playerSlots.forEach(slot -> slot.sendPacket(shared));
+    observers.forEach(observer -> observer.send(shared));
   }
 
-  /** Send Message to all registered Observers. */
+  /** Send Message to all registered Observers, serializing it only once. */
   private void observerBroadcast(ObservableRoomMessage message) {
-    observers.forEach(observer -> observer.send(createRoomPacket(message)));
+    SerializedPacket shared = new SerializedPacket(createRoomPacket(message));
+    observers.forEach(observer -> observer.send(shared));
   }
 
   /** {@link GameRoom#broadcast(ProtocolPacket) Broadcast} a {@link RemovedFromGame} packet to everyone in this room. */
@@ -138,17 +170,73 @@ public class GameRoom implements IGameListener {
     broadcast(new RemovedFromGame(getId()));
   }
 
-  /** Send updated GameState to all players and observers. */
+  /**
+   * Send updated GameState to all players and observers.
+   * Clients which accept deltas and have the previous state only receive the changes.
+   * The state and the changes are each serialized once for all of them.
+   * No perspective is attached, as it is not written to the network anyway.
+   */
   @Override
   public void onStateChanged(IGameState data, boolean observersOnly) {
-    MementoMessage memento = new MementoMessage(data, null);
-    observerBroadcast(memento);
+    // clients with a send queue serialize it later, while the game goes on
+    IGameState state = anyClient(IClient::isSendingLater) ? data.clone() : data;
+    Long previousChecksum = lastState != null ? lastState.getChecksum() : null;
+    DeltaMessage delta = null;
+    if (anyClient(IClient::isDeltaMementos))
+      delta = createDelta(data);
+    else
+      lastState = null;
+    MementoMessage memento = new MementoMessage(state, null);
+    SerializedPacket mementoPacket = new SerializedPacket(createRoomPacket(memento));
+    SerializedPacket deltaPacket = delta != null ? new SerializedPacket(createRoomPacket(delta)) : null;
+    observers.forEach(observer ->
+        observer.send(stateFor(observer, mementoPacket, deltaPacket, previousChecksum)));
     if (!observersOnly) {
-      sendStateToPlayers(data);
+      playerSlots.forEach(slot ->
+          slot.sendPacket(stateFor(slot.getClient(), mementoPacket, deltaPacket, previousChecksum)));
       saveReplayMessage(memento);
     }
   }
 
+  /** @return whether any player or observer of this room matches the predicate */
+  private boolean anyClient(Predicate<IClient> predicate) {
+    return observers.stream().anyMatch(predicate) ||
+        playerSlots.stream().map(PlayerSlot::getClient).anyMatch(client -> client != null && predicate.test(client));
+  }
+
+  /** @return the changes since the last state, or null if all clients should receive the full state */
+  private DeltaMessage createDelta(IGameState data) {
+    if (!(data instanceof IDeltaGameState))
+      return null;
+    IDeltaGameState state = (IDeltaGameState) data;
+    IDeltaGameState previous = lastState;
+    lastState = (IDeltaGameState) state.clone();
+    if (previous == null || ++deltasSinceKeyframe >= KEYFRAME_INTERVAL) {
+      deltasSinceKeyframe = 0;
+      return null;
+    }
+    IStateDelta changes = state.diff(previous);
+    return changes != null ? new DeltaMessage(changes, state.getChecksum()) : null;
+  }
+
+  /** @return the delta if the client accepts it and received the state it applies to, otherwise the memento */
+  private SerializedPacket stateFor(IClient client, SerializedPacket memento, SerializedPacket delta, Long previousChecksum) {
+    if (client == null || !client.isDeltaMementos() || lastState == null)
+      return memento;
+    Long known = clientStates.put(client, lastState.getChecksum());
+    return delta != null && known != null && known.equals(previousChecksum) ? delta : memento;
+  }
+
+  /** Send the full last state to a client which could not apply a {@link DeltaMessage}, see {@link ResyncRequest}. */
+  public void resync(IClient client) {
+    if (lastState == null || !clientStates.containsKey(client)) {
+      logger.warn("{} requested a resync of {} without receiving deltas", client, this);
+      return;
+    }
+    clientStates.put(client, lastState.getChecksum());
+    client.send(createRoomPacket(new MementoMessage(lastState.clone(), null)));
+  }
+
   /**
    * {@link GameRoom#broadcast(ProtocolPacket) Broadcast} the error package to this room.
    *
@@ -158,12 +246,6 @@ public class GameRoom implements IGameListener {
     broadcast(errorPacket);
   }
 
-  /** Sends the given GameState to all Players. */
-  private void sendStateToPlayers(IGameState data) {
-    playerSlots.forEach(slot ->
-        slot.onPlayerEvent(new MementoMessage(data, slot.getPlayer())));
-  }
-
 
   /** Create {@link RoomPacket RoomPacket} from id and data Object. */
   public RoomPacket createRoomPacket(RoomMessage data) {
@@ -174,30 +256,83 @@ public class GameRoom implements IGameListener {
     return this.id;
   }
 
+  /** @return whether a client without reservation could {@link #claimSeat() claim a seat} in this room */
+  public boolean isOpen() {
+    return vacancies.get() > 0 && !isOver();
+  }
+
   /**
-   * Join a client into this room.
-   * Starts the game if full.
+   * Claims a seat for a client without reservation, which then has to {@link #join(Client) join}.
+   * Never waits for the room, so the matchmaking of the {@link GameRoomManager} can claim seats under its lock.
    *
-   * @return true if successfully joined,
-   * false if there was no free slot
+   * @return false if the room has no seat left
    */
-  public synchronized boolean join(Client client) {
-    PlayerSlot slot = playerSlots.stream()
-        .filter(PlayerSlot::isFree).findFirst()
-        .orElseGet(() -> playerSlots.size() < getMaximumPlayerCount() ? openSlot() : null);
-    if (slot == null)
-      return false;
-    fillSlot(slot, client);
+  public boolean claimSeat() {
+    int current;
+    do {
+      current = vacancies.get();
+      if (current <= 0 || isOver())
+        return false;
+    } while (!vacancies.compareAndSet(current, current - 1));
     return true;
   }
 
   /**
-   * If game is not prepared set attributes of PlayerSlot and start game if game is {@link #isReady() ready}.
+   * Joins a client into the seat it {@link #claimSeat() claimed}, after the requests submitted before.
+   * Starts the game if full.
+   *
+   * @param ifOver runs instead if the game is over by then
+   */
+  public void join(Client client, Runnable ifOver) {
+    submit(() -> {
+      if (isOver()) {
+        ifOver.run();
+        return;
+      }
+      PlayerSlot slot = playerSlots.stream()
+          .filter(PlayerSlot::isFree).findFirst()
+          .orElseGet(this::openSlot);
+      occupy(slot, client);
+    });
+  }
+
+  /** @return the number of seats taken, claimed or reserved */
+  public int getSeatsTaken() {
+    return getMaximumPlayerCount() - vacancies.get();
+  }
+
+  /**
+   * Frees the slot of an expired reservation,
+   * or cancels the game if no client joined and no other reservation is left to redeem.
+   */
+  void onReservationExpired(PlayerSlot slot) {
+    if (isOver() || !slot.isReserved() || !slot.isEmpty())
+      return;
+    if (playerSlots.stream().allMatch(other -> other == slot || other.isFree())) {
+      logger.info("Cancelling {}, its reservations expired", game);
+      cancel();
+    } else {
+      slot.free();
+    }
+  }
+
+  /** Offers the seat of a slot whose reservation was freed to clients without reservation. */
+  void onReservationFreed() {
+    vacancies.incrementAndGet();
+    gameRoomManager.offer(this);
+  }
+
+  /**
+   * Fill the slot after the requests submitted before and start game if game is {@link #isReady() ready}.
    *
    * @param openSlot PlayerSlot to fill
    * @param client   Client to fill PlayerSlot
    */
-  synchronized void fillSlot(PlayerSlot openSlot, Client client) {
+  void fillSlot(PlayerSlot openSlot, Client client) {
+    submit(() -> occupy(openSlot, client));
+  }
+
+  private void occupy(PlayerSlot openSlot, Client client) {
     openSlot.setClient(client); // sets role of Slot as PlayerRole
     client.send(new JoinedRoomResponse(getId()));
     startIfReady();
@@ -225,7 +360,7 @@ public class GameRoom implements IGameListener {
     start();
   }
 
-  private synchronized void start() {
+  private void start() {
     logger.info("Starting {}", game);
     this.game.start();
     setStatus(GameStatus.ACTIVE);
@@ -252,30 +387,68 @@ public class GameRoom implements IGameListener {
   }
 
   /**
-   * Threadsafe method to reserve all PlayerSlots.
+   * Reserve all PlayerSlots, has to run on the mailbox like other changes.
    *
    * @return list of reservations
    */
-  public synchronized List<String> reserveSlots(SlotDescriptor[] descriptors) {
+  public List<String> reserveSlots(SlotDescriptor[] descriptors) {
     List<String> result = new ArrayList<>(this.playerSlots.size());
     for (SlotDescriptor descriptor : descriptors) {
       PlayerSlot slot = openSlot();
       Player player = slot.getPlayer();
       player.setDisplayName(descriptor.getDisplayName());
       player.setCanTimeout(descriptor.getCanTimeout());
-      if (descriptor.getReserved())
+      if (descriptor.getReserved()) {
+        vacancies.decrementAndGet();
         result.add(slot.reserve());
+      }
     }
     return result;
   }
 
+  /**
+   * Runs the task after all requests submitted to this room before,
+   * without blocking the calling thread.
+   */
+  public void submit(Runnable task) {
+    mailbox.submit(task);
+  }
+
+  /** {@link #submit(Runnable) Submits} the task and completes the future with its result. */
+  public <T> CompletableFuture<T> call(Supplier<T> task) {
+    CompletableFuture<T> result = new CompletableFuture<>();
+    submit(() -> {
+      try {
+        result.complete(task.get());
+      } catch (Throwable e) {
+        result.completeExceptionally(e);
+      }
+    });
+    return result;
+  }
+
+  /**
+   * {@link #submit(Runnable) Submits} the move to be handled by {@link #onEvent(Client, IMove)}.
+   * Errors are reported to the source like errors of other requests.
+   */
+  public void submitEvent(Client source, IMove move) {
+    submit(() -> {
+      try {
+        onEvent(source, move);
+      } catch (RescuableClientException e) {
+        logger.warn("Error on " + move, e);
+        source.send(new ErrorPacket(createRoomPacket(move), e.toString()));
+      }
+    });
+  }
+
   /**
    * Execute received action.
    *
    * @param source Client which caused the event
    * @param move   ProtocolMessage containing the action
    */
-  public synchronized void onEvent(Client source, IMove move) throws GameRoomException {
+  public void onEvent(Client source, IMove move) throws GameRoomException {
     if (isOver())
       throw new GameException("Game is already over, but got " + move);
 
@@ -320,10 +493,18 @@ public class GameRoom implements IGameListener {
         .collect(Collectors.toList());
   }
 
-  /** Add a Server {@link Client Client} in the role of an Observer. */
+  /** Add a Server {@link Client Client} in the role of an Observer, after the requests submitted before. */
   public void addObserver(Client source) {
-    this.observers.add(source);
-    source.send(new ObservationResponse(getId()));
+    submit(() -> {
+      this.observers.add(source);
+      source.addClientListener(observerListener);
+      source.send(new ObservationResponse(getId()));
+    });
+  }
+
+  private void removeObserver(Client observer) {
+    observers.remove(observer);
+    clientStates.remove(observer);
   }
 
   /**
@@ -333,7 +514,7 @@ public class GameRoom implements IGameListener {
    *
    * @return a RoomPacket with a GamePaused message or null if unsuccessful
    */
-  public synchronized void pause(boolean pause) {
+  public void pause(boolean pause) {
     if (isOver()) {
       logger.warn("Cannot set pause to {} for already finished {}", pause, game);
       return;
@@ -363,7 +544,7 @@ public class GameRoom implements IGameListener {
    * @param forced If true, the game will be forcibly started if starting
    *               conditions are not met. This should result in a GameOver.
    */
-  public synchronized void step(boolean forced) {
+  public void step(boolean forced) {
     if (getStatus() == GameStatus.CREATED) {
       if (forced) {
         logger.warn("Forcing game start for {}", game);
@@ -388,6 +569,11 @@ public class GameRoom implements IGameListener {
 
   private void destroy() {
     kickAllClients();
+    observers.forEach(observer -> {
+      if (observer instanceof Client)
+        ((Client) observer).removeClientListener(observerListener);
+    });
+    clientStates.clear();
     this.gameRoomManager.remove(this);
   }
 
@@ -407,10 +593,13 @@ public class GameRoom implements IGameListener {
     this.status = status;
   }
 
-  /** Remove a player and stop the game. */
+  /** Remove a player and stop the game, has to run on the mailbox. */
   public void removePlayer(Player player, XStreamClient.DisconnectCause cause) {
     logger.info("Removing {} from {}", player, this);
     player.setLeft(cause);
+    playerSlots.stream()
+        .filter(slot -> slot.getPlayer() == player && !slot.isEmpty())
+        .forEach(slot -> clientStates.remove(slot.getClient()));
     if (!isOver())
       cancel();
   }
@@ -9,7 +9,9 @@ import sc.api.plugins.exceptions.GameRoomException;
 import sc.api.plugins.exceptions.RescuableClientException;
 import sc.networking.InvalidScoreDefinitionException;
 import sc.networking.clients.GameLoaderClient;
+import sc.protocol.requests.JoinRoomRequest;
 import sc.protocol.requests.PrepareGameRequest;
+import sc.protocol.responses.ErrorPacket;
 import sc.protocol.responses.GamePreparedResponse;
 import sc.protocol.responses.RoomWasJoinedEvent;
 import sc.server.Configuration;
@@ -20,24 +22,32 @@ import java.io.File;
 import java.math.BigDecimal;
 import java.math.MathContext;
 import java.util.*;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
 
 /**
  * The GameManager is responsible to keep all games alive and kill them once
  * they are done. Additionally the GameManager has to detect and kill games
  * which seem dead-locked or have caused a timeout.
+ *
+ * Rooms are kept in a concurrent map, so looking up the room of a packet never waits
+ * for other rooms being created or removed. Each {@link GameRoom} changes only on its own mailbox.
+ * Matchmaking only {@link GameRoom#claimSeat() claims seats} under its lock and joins afterwards,
+ * so it never waits for a room while holding the lock.
  */
 public class GameRoomManager {
-  private Map<String, GameRoom> rooms;
+  private final Map<String, GameRoom> rooms = new ConcurrentHashMap<>();
+  /** Held while a client looks for an open room, so that two clients looking at the same time end up in one room. */
+  private final Object matchmakingLock = new Object();
+  /** Rooms with seats for clients without reservation per plugin id, oldest first.
+   * Rooms are added under the {@link #matchmakingLock}, but may be removed without it. */
+  private final Map<String, Queue<GameRoom>> openRooms = new ConcurrentHashMap<>();
 
   private static final Logger logger = LoggerFactory.getLogger(GameRoomManager.class);
 
-  /** Default constructor, initializes rooms, loads available plugins. */
-  public GameRoomManager() {
-    this.rooms = new HashMap<>();
-  }
-
   /** Adds an active GameRoom to this <code>GameManager</code> */
-  private synchronized void add(GameRoom room) {
+  private void add(GameRoom room) {
     logger.debug("Adding room with id {}", room.getId());
     this.rooms.put(room.getId(), room);
   }
@@ -49,7 +59,7 @@ public class GameRoomManager {
    *
    * @throws RescuableClientException if creation of game failed
    */
-  public synchronized GameRoom createGameRoom(String gameType) {
+  public GameRoom createGameRoom(String gameType) {
     IGamePlugin plugin = IGamePlugin.loadPlugin(gameType);
     IGameInstance game;
 
@@ -77,7 +87,7 @@ public class GameRoomManager {
     // pause room on JoinRoomRequest if specified in server.properties
     if (!prepared) {
       boolean paused = Boolean.parseBoolean(Configuration.get(Configuration.PAUSED));
-      room.pause(paused);
+      room.submit(() -> room.pause(paused));
     }
 
     this.add(room);
@@ -85,49 +95,106 @@ public class GameRoomManager {
     return room;
   }
 
-  private static synchronized String generateRoomId() {
+  private static String generateRoomId() {
     return UUID.randomUUID().toString();
   }
 
   /**
    * Open new GameRoom and join the client.
    *
-   * @return GameRoomMessage with roomId, null if unsuccessful
+   * @return GameRoomMessage with roomId
    *
    * @throws RescuableClientException if game could not be created
    */
-  public synchronized RoomWasJoinedEvent createAndJoinGame(Client client, String gameType) {
-    GameRoom room = createGameRoom(gameType);
-    if (room.join(client)) {
-      return roomJoined(room);
+  public RoomWasJoinedEvent createAndJoinGame(Client client, String gameType) {
+    GameRoom room;
+    synchronized(matchmakingLock) {
+      room = createOpenRoom(gameType);
     }
-    return null;
+    room.join(client, () -> logger.warn("{} ended before {} could join", room, client));
+    return roomJoined(room);
   }
 
   /**
    * Called on JoinRoomRequest. Client joins an already existing open GameRoom or opens new one and joins.
+   * The client joins on the mailbox of the room, so the returned event may precede the join.
    *
-   * @return GameRoomMessage with roomId, null if unsuccessful
+   * @return GameRoomMessage with roomId
    *
    * @throws RescuableClientException if client could not join room
    */
-  public synchronized RoomWasJoinedEvent joinOrCreateGame(Client client, String gameType)
+  public RoomWasJoinedEvent joinOrCreateGame(Client client, String gameType)
           throws RescuableClientException {
-    for (GameRoom gameRoom : getGames()) {
-      // TODO gameType isn't checked
-      if (gameRoom.join(client)) {
-        return roomJoined(gameRoom);
-      }
+    return roomJoined(matchmake(client, IGamePlugin.loadPlugin(gameType).getId()));
+  }
+
+  /** Claims a seat in the oldest open room or a new one and joins the client there,
+   * looking again if that game ends before the client joined. */
+  private GameRoom matchmake(Client client, String pluginId) {
+    GameRoom room;
+    synchronized(matchmakingLock) {
+      room = claimOpenRoom(pluginId);
+      if (room == null)
+        room = createOpenRoom(pluginId);
+    }
+    room.join(client, () -> matchmake(client, pluginId));
+    return room;
+  }
+
+  /**
+   * Joins the client into the room with the given id.
+   *
+   * @throws GameRoomException if the room does not exist or has no seat left
+   */
+  public void joinRoom(Client client, String roomId) throws GameRoomException {
+    GameRoom room = findRoom(roomId);
+    if (!room.claimSeat())
+      throw new GameRoomException("Room " + roomId + " is already full!");
+    room.join(client, () ->
+        client.send(new ErrorPacket(new JoinRoomRequest(roomId), "Game in room " + roomId + " is already over")));
+  }
+
+  /** Creates a room and claims a seat in it, offering the others to further clients. */
+  private GameRoom createOpenRoom(String gameType) {
+    GameRoom room = createGameRoom(gameType);
+    room.claimSeat();
+    offer(room);
+    return room;
+  }
+
+  /** @return the oldest room of the plugin with a seat claimed in it, or null if there is none */
+  private GameRoom claimOpenRoom(String pluginId) {
+    Queue<GameRoom> open = openRooms.get(pluginId);
+    if (open == null)
+      return null;
+    GameRoom room;
+    while ((room = open.peek()) != null) {
+      boolean claimed = room.claimSeat();
+      if (!claimed || !room.isOpen())
+        open.remove(room);
+      if (claimed)
+        return room;
+    }
+    return null;
+  }
+
+  /** Lets clients without reservation claim the seats of the room, e.g. after a reservation was freed. */
+  void offer(GameRoom room) {
+    synchronized(matchmakingLock) {
+      if (!room.isOpen() || !rooms.containsKey(room.getId()))
+        return;
+      Queue<GameRoom> open = openRooms.computeIfAbsent(room.game.getPluginUUID(), id -> new ConcurrentLinkedQueue<>());
+      if (!open.contains(room))
+        open.add(room);
     }
-    return createAndJoinGame(client, gameType);
   }
 
   protected RoomWasJoinedEvent roomJoined(GameRoom room) {
-    return new RoomWasJoinedEvent(room.getId(), room.getClients().size());
+    return new RoomWasJoinedEvent(room.getId(), room.getSeatsTaken());
   }
 
-  /** Create an unmodifiable Collection of the {@link GameRoom GameRooms}. */
-  public synchronized Collection<GameRoom> getGames() {
+  /** Create an unmodifiable view of the {@link GameRoom GameRooms}, which reflects concurrent changes. */
+  public Collection<GameRoom> getGames() {
     return Collections.unmodifiableCollection(this.rooms.values());
   }
 
@@ -139,14 +206,24 @@ public class GameRoomManager {
    *
    * @throws RescuableClientException if game could not be created
    */
-  public synchronized GamePreparedResponse prepareGame(String gameType, boolean paused, SlotDescriptor[] descriptors, IGameState loadGameInfo) {
+  public GamePreparedResponse prepareGame(String gameType, boolean paused, SlotDescriptor[] descriptors, IGameState loadGameInfo) {
     IGamePlugin plugin = IGamePlugin.loadPlugin(gameType);
     IGameInstance game = loadGameInfo != null ? plugin.createGameFromState(loadGameInfo) : plugin.createGame();
 
     GameRoom room = createGameRoom(plugin.getScoreDefinition(), game, true);
-    room.pause(paused);
+    room.submit(() -> room.pause(paused));
 
-    return new GamePreparedResponse(room.getId(), room.reserveSlots(descriptors));
+    List<String> reservations;
+    try {
+      // the room is new, so this only waits for its own reservations
+      reservations = room.call(() -> room.reserveSlots(descriptors)).join();
+    } catch (CompletionException e) {
+      remove(room);
+      throw (RuntimeException) e.getCause();
+    }
+    // unreserved slots can be taken by any client
+    offer(room);
+    return new GamePreparedResponse(room.getId(), reservations);
   }
 
   /**
@@ -172,7 +249,7 @@ public class GameRoomManager {
    *
    * @throws RescuableClientException if no room could be found
    */
-  public synchronized GameRoom findRoom(String roomId) throws RescuableClientException {
+  public GameRoom findRoom(String roomId) throws RescuableClientException {
     GameRoom room = this.rooms.get(roomId);
 
     if (room == null) {
@@ -183,8 +260,10 @@ public class GameRoomManager {
   }
 
   /** Remove specified room from this manager. */
-  public synchronized void remove(GameRoom gameRoom) {
+  public void remove(GameRoom gameRoom) {
     this.rooms.remove(gameRoom.getId());
+    gameRoom.getSlots().forEach(ReservationManager::release);
+    openRooms.values().forEach(open -> open.remove(gameRoom));
   }
 
 }
@@ -0,0 +1,73 @@
+package sc.server.gaming
+
+import org.slf4j.LoggerFactory
+import sc.framework.Threads
+import java.util.concurrent.ConcurrentLinkedQueue
+import java.util.concurrent.Executor
+import java.util.concurrent.Executors
+import java.util.concurrent.RejectedExecutionException
+import java.util.concurrent.atomic.AtomicBoolean
+import java.util.concurrent.atomic.AtomicInteger
+
+/**
+ * Runs the tasks of one [GameRoom] one at a time and in order of submission,
+ * on a pool of threads shared by all rooms.
+ * Threads receiving packets thus only enqueue them, and a busy room does not hold up other clients.
+ *
+ * After [BATCH_SIZE] tasks, a room yields its thread so that other rooms get their turn.
+ */
+class Mailbox @JvmOverloads constructor(private val executor: Executor = shared) {
+    private val tasks = ConcurrentLinkedQueue<Runnable>()
+    private val scheduled = AtomicBoolean()
+    
+    fun submit(task: Runnable) {
+        tasks.add(task)
+        schedule()
+    }
+    
+    private fun schedule() {
+        if(scheduled.compareAndSet(false, true))
+            execute()
+    }
+    
+    private fun execute() {
+        try {
+            executor.execute(::process)
+        } catch(e: RejectedExecutionException) {
+            logger.warn("Dropping {} tasks, the executor is shut down", tasks.size)
+            tasks.clear()
+            scheduled.set(false)
+        }
+    }
+    
+    private fun process() {
+        repeat(BATCH_SIZE) {
+            val task = tasks.poll()
+            if(task == null) {
+                scheduled.set(false)
+                // a task might have been added before the flag was reset
+                if(tasks.isNotEmpty())
+                    schedule()
+                return
+            }
+            try {
+                task.run()
+            } catch(e: Throwable) {
+                // an Error must not stop the room from running its later tasks
+                logger.error("Task $task failed", e)
+            }
+        }
+        execute()
+    }
+    
+    companion object {
+        private val logger = LoggerFactory.getLogger(Mailbox::class.java)
+        
+        const val BATCH_SIZE = 64
+        
+        private val workerCount = AtomicInteger()
+        private val shared = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors()) { task ->
+            Threads.create("Room-Worker-${workerCount.incrementAndGet()}", task)
+        }
+    }
+}
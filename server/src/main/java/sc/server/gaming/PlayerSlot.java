@@ -3,6 +3,7 @@ package sc.server.gaming;
 import org.jetbrains.annotations.NotNull;
 import sc.api.plugins.host.IPlayerListener;
 import sc.framework.plugins.Player;
+import sc.networking.SerializedPacket;
 import sc.networking.clients.IClient;
 import sc.networking.clients.XStreamClient;
 import sc.protocol.ProtocolPacket;
@@ -10,7 +11,7 @@ import sc.protocol.room.RoomMessage;
 import sc.server.network.Client;
 import sc.server.network.IClientListener;
 
-/** Links Client and Player into a GameRoom. */
+/** Links Client and Player into a GameRoom. Like the room, it is only changed on the mailbox of the room. */
 public class PlayerSlot implements IPlayerListener, IClientListener {
   /** Actual Server-client to send Packages. */
   private IClient client;
@@ -39,7 +40,7 @@ public class PlayerSlot implements IPlayerListener, IClientListener {
     return this.reserved;
   }
 
-  public synchronized String reserve() {
+  public String reserve() {
     if (isReserved())
       throw new IllegalStateException("Slot already reserved.");
     if (!isEmpty())
@@ -66,14 +67,15 @@ public class PlayerSlot implements IPlayerListener, IClientListener {
   }
 
   /** Clears reservation requirement. */
-  public synchronized void free() {
+  public void free() {
     if (!this.reserved)
       throw new IllegalStateException("This slot isn't reserved.");
 
     this.reserved = false;
+    room.onReservationFreed();
   }
 
-  public Object getClient() {
+  public IClient getClient() {
     return this.client;
   }
 
@@ -89,6 +91,15 @@ public class PlayerSlot implements IPlayerListener, IClientListener {
     }
   }
 
+  /** Sends a packet shared with other clients of the room. */
+  public void sendPacket(SerializedPacket packet) {
+    if(client != null) {
+      client.send(packet);
+    } else {
+      onClientDisconnected(null, XStreamClient.DisconnectCause.NOT_CONNECTED);
+    }
+  }
+
   @Override
   public void onPlayerEvent(RoomMessage message) {
     sendPacket(getRoom().createRoomPacket(message));
@@ -96,6 +107,6 @@ public class PlayerSlot implements IPlayerListener, IClientListener {
 
   @Override
   public void onClientDisconnected(Client source, XStreamClient.DisconnectCause cause) {
-    getRoom().removePlayer(getPlayer(), cause);
+    getRoom().submit(() -> getRoom().removePlayer(getPlayer(), cause));
   }
 }
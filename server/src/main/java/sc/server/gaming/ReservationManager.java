@@ -3,16 +3,45 @@ package sc.server.gaming;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import sc.api.plugins.exceptions.RescuableClientException;
+import sc.framework.Threads;
+import sc.server.Configuration;
 import sc.server.network.Client;
 
-import java.util.HashMap;
 import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
+/**
+ * Hands out reservation codes for prepared {@link PlayerSlot PlayerSlots}.
+ *
+ * Codes that are not redeemed within {@link Configuration#getReservationTimeout()} seconds
+ * are evicted by a timer shared by all reservations, which runs until {@link #shutdown()}.
+ * The room of an evicted reservation frees its slot or ends, see {@link GameRoom#onReservationExpired(PlayerSlot)}.
+ */
 public final class ReservationManager {
 
-  private static Logger logger = LoggerFactory.getLogger(ReservationManager.class);
-  private static Map<String, PlayerSlot> reservations = new HashMap<>();
+  private static final Logger logger = LoggerFactory.getLogger(ReservationManager.class);
+  private static final Map<String, Reservation> reservations = new ConcurrentHashMap<>();
+  /** Reverse index of {@link #reservations}, to check and release the reservation of a slot. */
+  private static final Map<PlayerSlot, String> codes = new ConcurrentHashMap<>();
+  private static ScheduledExecutorService timer;
+  /** How often the {@link #timer} checks for expired reservations,
+   * fixed so that a changed {@link Configuration#getReservationTimeout()} is still honored in time. */
+  private static final long EVICTION_PERIOD_SECONDS = 1;
+
+  private static final class Reservation {
+    final PlayerSlot slot;
+    /** {@link System#nanoTime()} after which the reservation is evicted, or {@link Long#MAX_VALUE}. */
+    final long deadline;
+
+    Reservation(PlayerSlot slot, long deadline) {
+      this.slot = slot;
+      this.deadline = deadline;
+    }
+  }
 
   private ReservationManager() {
     // singleton
@@ -28,9 +57,9 @@ public final class ReservationManager {
    *
    * @throws RescuableClientException will be thrown if slot cannot be filled or reservation is unknown
    */
-  public static synchronized PlayerSlot redeemReservationCode(Client client, String reservation)
+  public static PlayerSlot redeemReservationCode(Client client, String reservation)
       throws RescuableClientException {
-    PlayerSlot result = reservations.remove(reservation);
+    PlayerSlot result = remove(reservation);
     if (result == null)
       throw new UnknownReservationException();
 
@@ -48,12 +77,16 @@ public final class ReservationManager {
    *
    * @throws RuntimeException if the slot is already reserved
    */
-  public synchronized static String reserve(PlayerSlot playerSlot) {
-    if (reservations.containsValue(playerSlot))
+  public static String reserve(PlayerSlot playerSlot) {
+    String key = generateUniqueId();
+    if (codes.putIfAbsent(playerSlot, key) != null)
       throw new RuntimeException("This slot is already reserved.");
 
-    String key = generateUniqueId();
-    reservations.put(key, playerSlot);
+    int timeout = Configuration.getReservationTimeout();
+    long deadline = timeout > 0 ? System.nanoTime() + TimeUnit.SECONDS.toNanos(timeout) : Long.MAX_VALUE;
+    reservations.put(key, new Reservation(playerSlot, deadline));
+    if (timeout > 0)
+      startTimer();
     return key;
   }
 
@@ -62,7 +95,7 @@ public final class ReservationManager {
    *
    * @return the unique ID
    */
-  private synchronized static String generateUniqueId() {
+  private static String generateUniqueId() {
     String key;
     do {
       key = UUID.randomUUID().toString();
@@ -75,9 +108,54 @@ public final class ReservationManager {
    *
    * @param reservation the redeem code
    */
-  public static synchronized void freeReservation(String reservation) {
-    PlayerSlot slot = reservations.remove(reservation);
-    slot.free();
+  public static void freeReservation(String reservation) {
+    PlayerSlot slot = remove(reservation);
+    if (slot != null)
+      slot.getRoom().submit(slot::free);
+  }
+
+  /** Drops the reservation of the slot, if any, e.g. because its room was removed. */
+  public static void release(PlayerSlot slot) {
+    String code = codes.remove(slot);
+    if (code != null)
+      reservations.remove(code);
+  }
+
+  /** @return the slot of the removed reservation, or null if there was none */
+  private static PlayerSlot remove(String reservation) {
+    Reservation removed = reservations.remove(reservation);
+    if (removed == null)
+      return null;
+    codes.remove(removed.slot, reservation);
+    return removed.slot;
+  }
+
+  /** Removes the reservations whose deadline is before the given {@link System#nanoTime()}. */
+  static void evictExpired(long now) {
+    reservations.forEach((code, reservation) -> {
+      if (reservation.deadline != Long.MAX_VALUE && now - reservation.deadline > 0 && remove(code) != null) {
+        GameRoom room = reservation.slot.getRoom();
+        logger.warn("Reservation {} for {} expired.", code, room);
+        room.submit(() -> room.onReservationExpired(reservation.slot));
+      }
+    });
+  }
+
+  /** Stops checking for expired reservations until the next reservation, e.g. when the server shuts down. */
+  public static synchronized void shutdown() {
+    if (timer == null)
+      return;
+    timer.shutdownNow();
+    timer = null;
+  }
+
+  /** Checks for expired reservations every {@link #EVICTION_PERIOD_SECONDS}. */
+  private static synchronized void startTimer() {
+    if (timer != null)
+      return;
+    timer = Executors.newSingleThreadScheduledExecutor(task -> Threads.create("Reservation-Timer", task));
+    timer.scheduleAtFixedRate(() -> evictExpired(System.nanoTime()),
+        EVICTION_PERIOD_SECONDS, EVICTION_PERIOD_SECONDS, TimeUnit.SECONDS);
   }
 
 }
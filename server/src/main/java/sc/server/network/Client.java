@@ -5,6 +5,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import sc.api.plugins.exceptions.RescuableClientException;
 import sc.networking.INetworkInterface;
+import sc.networking.IOutputNetworkInterface;
 import sc.networking.UnprocessedPacketException;
 import sc.networking.clients.IClient;
 import sc.networking.clients.XStreamClient;
@@ -16,6 +17,8 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Handles server-side communication with connected clients.
@@ -26,15 +29,28 @@ import java.util.List;
 public class Client extends XStreamClient implements IClient {
   private static final Logger logger = LoggerFactory.getLogger(Client.class);
 
+  private static final AtomicLong nextId = new AtomicLong();
+
+  private final long id = nextId.incrementAndGet();
   protected boolean isAdministrator = false;
   private boolean notifiedOnDisconnect = false;
   private IClientRequestListener requestHandler = null;
-  private final List<IClientListener> clientListeners = new ArrayList<>();
+  private final List<IClientListener> clientListeners = new CopyOnWriteArrayList<>();
 
   public Client(INetworkInterface networkInterface) throws IOException {
     super(networkInterface);
   }
 
+  /** @see XStreamClient#XStreamClient(IOutputNetworkInterface, boolean) */
+  public Client(IOutputNetworkInterface networkInterface, boolean receive) throws IOException {
+    super(networkInterface, receive);
+  }
+
+  /** @return a number identifying this connection, unique within this JVM */
+  public long getId() {
+    return id;
+  }
+
   public void setRequestHandler(IClientRequestListener handler) {
     requestHandler = handler;
   }
@@ -69,6 +85,9 @@ public class Client extends XStreamClient implements IClient {
       if (!isAdministrator()) {
         isAdministrator = true;
         logger.info("Client authenticated as administrator");
+        for (IClientListener listener : new ArrayList<>(clientListeners)) {
+          listener.onClientAuthenticated(this);
+        }
       } else {
         logger.warn("Client tried to authenticate as administrator twice.");
       }
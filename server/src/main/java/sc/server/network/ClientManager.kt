@@ -2,18 +2,31 @@ package sc.server.network
 
 import org.slf4j.LoggerFactory
 import sc.networking.clients.XStreamClient
+import sc.server.Configuration
 import sc.server.ServiceManager
 import java.io.Closeable
 import java.io.IOException
+import java.util.Collections
+import java.util.concurrent.ConcurrentHashMap
 
 /** The ClientManager serves as a lookup table for all active connections.  */
 class ClientManager(private val requestHandler: IClientRequestListener) : Runnable, IClientListener, Closeable {
 
-    /** List of all XStreamClients. */
-    val clients = ArrayList<Client>()
+    /** All connected clients by their [Client.getId]. */
+    private val registry = ConcurrentHashMap<Long, Client>()
+    
+    /** Authenticated clients, a subset of [registry]. */
+    private val administratorIndex = ConcurrentHashMap.newKeySet<Client>()
+    
+    /** Snapshot of all connected clients, in order of connection. */
+    val clients: List<Client>
+        get() = registry.values.sortedBy { it.id }
+    
+    /** Live view of the connected clients that authenticated as administrator. */
+    val administrators: Collection<Client> = Collections.unmodifiableSet(administratorIndex)
 
-    /** Listener waits for new clients to connect. */
-    private val clientListener = NewClientListener()
+    /** Listener waits for new clients to connect, chosen on [start] according to [Configuration.getNio]. */
+    private var clientListener: IClientAcceptor? = null
 
     private var running: Boolean = false
     private var serviceThread: Thread? = null
@@ -29,7 +42,7 @@ class ClientManager(private val requestHandler: IClientRequestListener) : Runnab
      * *(only used by tests and addAll())*
      */
     fun add(newClient: Client) {
-        clients.add(newClient)
+        registry[newClient.id] = newClient
         newClient.addClientListener(this)
         newClient.setRequestHandler(requestHandler)
         newClient.start()
@@ -44,7 +57,7 @@ class ClientManager(private val requestHandler: IClientRequestListener) : Runnab
         while(running && !Thread.interrupted()) {
             try {
                 // Waits blocking for new Client
-                val client = clientListener.fetchNewSingleClient()
+                val client = clientListener!!.fetchNewSingleClient()
 
                 logger.info("Delegating new client to ClientManager...")
                 add(client)
@@ -63,10 +76,13 @@ class ClientManager(private val requestHandler: IClientRequestListener) : Runnab
      * Starts the ClientManager and ClientListener in it's own daemon thread. This method should be used only once.
      *
      * @see NewClientListener.start
+     * @see NioClientListener.start
      */
     @Throws(IOException::class)
     fun start() {
-        clientListener.start()
+        val listener = clientListener
+                       ?: (if(Configuration.getNio()) NioClientListener() else NewClientListener()).also { clientListener = it }
+        listener.start()
         if(serviceThread == null)
             serviceThread = ServiceManager.createService(javaClass.simpleName, this).apply { start() }
     }
@@ -74,20 +90,24 @@ class ClientManager(private val requestHandler: IClientRequestListener) : Runnab
     override fun close() {
         running = false
         serviceThread?.interrupt()
-        clientListener.close()
-        while (clients.size > 0) {
-            try {
-                clients.removeAt(clients.lastIndex).stop()
-            } catch (ignored: ArrayIndexOutOfBoundsException) {
-                // Client was removed concurrently
-            }
+        clientListener?.close()
+        registry.keys.forEach { id ->
+            // a client might have been removed concurrently
+            registry.remove(id)?.stop()
         }
+        administratorIndex.clear()
     }
 
     /** Remove disconnected client. */
     override fun onClientDisconnected(source: Client, cause: XStreamClient.DisconnectCause) {
         logger.info("Removing client $source from client manager")
-        clients.remove(source)
+        registry.remove(source.id)
+        administratorIndex.remove(source)
+    }
+    
+    override fun onClientAuthenticated(source: Client) {
+        // atomic with the removal on disconnect, so a disconnected client is not added back
+        registry.computeIfPresent(source.id) { _, client -> client.also { administratorIndex.add(it) } }
     }
 
     companion object {
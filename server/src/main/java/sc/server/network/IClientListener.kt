@@ -2,14 +2,29 @@ package sc.server.network
 
 import sc.api.plugins.exceptions.RescuableClientException
 import sc.networking.clients.XStreamClient.DisconnectCause
+import java.io.Closeable
+import java.io.IOException
 
 interface IClientListener {
     /** Invoked when this client disconnected.  */
     fun onClientDisconnected(source: Client, cause: DisconnectCause)
+    
+    /** Invoked when this client authenticated as administrator. */
+    fun onClientAuthenticated(source: Client) {}
 }
 
 interface IClientRequestListener {
     /** Invoked when new data is received and ready to be processed.  */
     @Throws(RescuableClientException::class)
     fun onRequest(source: Client, callback: PacketCallback)
-}
\ No newline at end of file
+}
+/** Accepts new connections and hands them out as [Client]s. */
+interface IClientAcceptor: Closeable {
+    /** Starts listening on the configured port. */
+    @Throws(IOException::class)
+    fun start()
+    
+    /** Blocks until a new client connects. */
+    @Throws(InterruptedException::class)
+    fun fetchNewSingleClient(): Client
+}
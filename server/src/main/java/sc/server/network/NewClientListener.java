@@ -6,7 +6,6 @@ import sc.networking.TcpNetwork;
 import sc.server.Configuration;
 import sc.server.ServiceManager;
 
-import java.io.Closeable;
 import java.io.IOException;
 import java.net.InetAddress;
 import java.net.ServerSocket;
@@ -15,7 +14,7 @@ import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.LinkedBlockingQueue;
 
 /** Listener that waits for new clients and returns ready TCP connections to them. */
-public class NewClientListener implements Runnable, Closeable {
+public class NewClientListener implements IClientAcceptor, Runnable {
 
   private ServerSocket serverSocket;
   private Thread thread;
@@ -37,6 +36,7 @@ public class NewClientListener implements Runnable, Closeable {
    *
    * @throws InterruptedException If interrupted while waiting for a new client.
    */
+  @Override
   public Client fetchNewSingleClient() throws InterruptedException {
     return this.queue.take();
   }
@@ -47,6 +47,10 @@ public class NewClientListener implements Runnable, Closeable {
       Socket clientSocket = this.serverSocket.accept();
       logger.info("Connecting a Client at {}...", clientSocket);
       Client newClient = new Client(new TcpNetwork(clientSocket));
+      // a slow connection must not hold up the game rooms sending to it
+      int sendQueue = Configuration.getSendQueue();
+      if (sendQueue > 0)
+        newClient.enableSendQueue(sendQueue, Configuration.getSlowClients());
       try {
         this.queue.put(newClient);
         logger.info("Added Client " + newClient + " to ReadyQueue.");
@@ -76,6 +80,7 @@ public class NewClientListener implements Runnable, Closeable {
    *
    * The SocketListener then watches the {@link Configuration#getPort()} for new connecting clients.
    */
+  @Override
   public void start() throws IOException {
     startSocketListener();
     if (this.thread == null) {
@@ -0,0 +1,393 @@
+package sc.server.network
+
+import com.thoughtworks.xstream.XStreamException
+import org.slf4j.LoggerFactory
+import sc.framework.Threads
+import sc.networking.IOutputNetworkInterface
+import sc.networking.PacketFramer
+import sc.networking.clients.XStreamClient
+import sc.networking.clients.XStreamClient.DisconnectCause
+import sc.networking.clients.XStreamClient.OverflowPolicy
+import sc.server.Configuration
+import sc.server.ServiceManager
+import java.io.ByteArrayOutputStream
+import java.io.EOFException
+import java.io.IOException
+import java.io.OutputStream
+import java.net.InetAddress
+import java.net.InetSocketAddress
+import java.nio.ByteBuffer
+import java.nio.channels.*
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.ConcurrentLinkedQueue
+import java.util.concurrent.Executors
+import java.util.concurrent.LinkedBlockingQueue
+import java.util.concurrent.RejectedExecutionException
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicBoolean
+import java.util.concurrent.atomic.AtomicInteger
+import java.util.concurrent.locks.ReentrantLock
+import kotlin.concurrent.withLock
+
+/**
+ * Listener that serves all connections from a single selector thread
+ * instead of a receiving thread per connection like [NewClientListener].
+ *
+ * Incoming bytes are split into packets by a [PacketFramer].
+ * The packets are deserialized and handled on a fixed pool of [Configuration.getNioWorkers] threads,
+ * one at a time and in order for each connection.
+ * Outgoing data is written directly if the socket accepts it, otherwise once it becomes writable.
+ * Hence clients of this listener need no send queue, instead their pending output is limited to
+ * [Configuration.getNioOutputLimit] bytes, beyond which [Configuration.getSlowClients] applies.
+ * A closed connection keeps at most [XStreamClient.CLOSE_TIMEOUT_MILLIS] to write its pending output,
+ * as does the listener itself when it is closed.
+ */
+class NioClientListener: IClientAcceptor, Runnable {
+    private val queue = LinkedBlockingQueue<Client>()
+    private val selector = Selector.open()
+    private var serverChannel: ServerSocketChannel? = null
+    private var thread: Thread? = null
+    
+    /** Connections whose interest in writing has to be updated by the selector thread. */
+    private val interestUpdates = ConcurrentLinkedQueue<NioConnection>()
+    /** Connections that were closed while output was pending. */
+    private val closingConnections = ConcurrentHashMap.newKeySet<NioConnection>()
+    @Volatile
+    private var stopping = false
+    private var stopDeadline = 0L
+    
+    private val workerCount = AtomicInteger()
+    private val workers = Executors.newFixedThreadPool(Configuration.getNioWorkers()) { task ->
+        Threads.create("NIO-Worker-${workerCount.incrementAndGet()}", task)
+    }
+    
+    @Throws(InterruptedException::class)
+    override fun fetchNewSingleClient(): Client = queue.take()
+    
+    /** Start listening on the configured port in a daemon thread. */
+    @Throws(IOException::class)
+    override fun start() {
+        val port = Configuration.getPort()
+        // null accepts connections on all local addresses
+        val address = if(Configuration.getListenLocal()) InetAddress.getByName(null) else null
+        try {
+            val channel = ServerSocketChannel.open()
+            channel.bind(InetSocketAddress(address, port))
+            channel.configureBlocking(false)
+            channel.register(selector, SelectionKey.OP_ACCEPT)
+            serverChannel = channel
+            NewClientListener.lastUsedPort = channel.socket().localPort
+            logger.info("Listening on port {} for incoming connections.", NewClientListener.lastUsedPort)
+        } catch(e: IOException) {
+            logger.error("Could not start server on port $port", e)
+            throw e
+        }
+        if(thread == null)
+            thread = ServiceManager.createService(javaClass.simpleName, this).apply { start() }
+    }
+    
+    override fun run() {
+        while(selector.isOpen) {
+            try {
+                if(Thread.interrupted() && !stopping)
+                    stop()
+                if(stopping && (System.nanoTime() - stopDeadline >= 0 || selector.keys().none { it.isValid }))
+                    break
+                selector.select(if(stopping || closingConnections.isNotEmpty()) CLOSE_CHECK_MILLIS else 0)
+                generateSequence { interestUpdates.poll() }.forEach { it.updateInterest() }
+                val now = System.nanoTime()
+                closingConnections.forEach { it.closeIfOverdue(now) }
+                val keys = selector.selectedKeys().iterator()
+                while(keys.hasNext()) {
+                    val key = keys.next()
+                    keys.remove()
+                    try {
+                        if(key.isValid && key.isAcceptable)
+                            accept()
+                        if(key.isValid && key.isReadable)
+                            (key.attachment() as NioConnection).read()
+                        if(key.isValid && key.isWritable)
+                            (key.attachment() as NioConnection).apply { write() }.updateInterest()
+                    } catch(ignored: CancelledKeyException) {
+                        // Connection was closed concurrently
+                    }
+                }
+            } catch(e: ClosedSelectorException) {
+                break
+            } catch(e: IOException) {
+                logger.error("Selecting connections failed", e)
+            }
+        }
+        try {
+            selector.keys().forEach { (it.attachment() as? NioConnection)?.forceClose() }
+        } catch(ignored: ClosedSelectorException) {
+        }
+        selector.close()
+        logger.info("{} stopped", javaClass.simpleName)
+    }
+    
+    private fun accept() {
+        val channel = serverChannel?.accept() ?: return
+        logger.info("Connecting a Client at {}...", channel)
+        try {
+            channel.configureBlocking(false)
+            channel.socket().tcpNoDelay = true
+            val connection = NioConnection(channel)
+            connection.key = channel.register(selector, SelectionKey.OP_READ, connection)
+            connection.client = Client(connection, false)
+            queue.add(connection.client)
+            logger.info("Added Client {} to ReadyQueue.", connection.client)
+        } catch(e: IOException) {
+            logger.error("Could not accept $channel", e)
+            channel.close()
+        }
+    }
+    
+    override fun close() {
+        logger.info("Shutting down NioClientListener...")
+        try {
+            serverChannel?.close()
+        } catch(e: IOException) {
+            logger.warn("Couldn't close socket.", e)
+        }
+        stop()
+        if(thread != null)
+            selector.wakeup()
+        else
+            selector.close()
+        workers.shutdown()
+    }
+    
+    /** Lets the selector thread stop once all connections are closed, or the deadline for their output passed. */
+    private fun stop() {
+        stopDeadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(XStreamClient.CLOSE_TIMEOUT_MILLIS)
+        stopping = true
+    }
+    
+    private inner class NioConnection(private val channel: SocketChannel): IOutputNetworkInterface {
+        lateinit var key: SelectionKey
+        lateinit var client: Client
+        
+        private val framer = PacketFramer()
+        private val input = ByteBuffer.allocate(BUFFER_SIZE)
+        /** The name of the last incomplete packet that was checked to be known. */
+        private var checkedElement: String? = null
+        private var reading = true
+        
+        private val outputLimit = Configuration.getNioOutputLimit()
+        private val overflowPolicy = Configuration.getSlowClients()
+        /** Guards the pending output, [drained] is signalled whenever some of it has been written. */
+        private val lock = ReentrantLock()
+        private val drained = lock.newCondition()
+        private val output = ArrayDeque<ByteBuffer>()
+        /** Bytes in [output], compared against the [outputLimit]. */
+        private var pendingBytes = 0L
+        /** Whether the output exceeded the [outputLimit], all further output is dropped. */
+        private var overflowed = false
+        private var closing = false
+        /** When the channel is closed even if output is still pending, see [closeIfOverdue]. */
+        private var closeDeadline = 0L
+        private val outputStream = object: ByteArrayOutputStream(BUFFER_SIZE) {
+            @Synchronized
+            override fun flush() {
+                if(count == 0)
+                    return
+                val data = ByteBuffer.wrap(toByteArray())
+                reset()
+                if(!enqueue(data))
+                    return
+                if(!this@NioConnection.write())
+                    requestInterestUpdate()
+            }
+        }
+        
+        /** Received packets and events to be handled by a worker, in order. */
+        private val tasks = ConcurrentLinkedQueue<() -> Unit>()
+        private val scheduled = AtomicBoolean()
+        
+        override fun getOutputStream(): OutputStream = outputStream
+        
+        /** Adds the data to the pending [output], applying the [overflowPolicy] if that grows beyond the [outputLimit].
+         * @return whether the data was added */
+        private fun enqueue(data: ByteBuffer): Boolean {
+            lock.withLock {
+                if(overflowed)
+                    return false
+                if(overflowPolicy == OverflowPolicy.BLOCK) {
+                    var remaining = TimeUnit.MILLISECONDS.toNanos(XStreamClient.BLOCK_TIMEOUT_MILLIS)
+                    while(pendingBytes > 0 && pendingBytes + data.remaining() > outputLimit && !closing && remaining > 0)
+                        remaining = drained.awaitNanos(remaining)
+                }
+                if(pendingBytes > 0 && pendingBytes + data.remaining() > outputLimit) {
+                    overflowed = true
+                    output.clear()
+                    pendingBytes = 0
+                    val exception = IOException("$outputLimit bytes waiting to be sent")
+                    submit { client.abort(DisconnectCause.SLOW_CONSUMER, exception) }
+                    return false
+                }
+                output.add(data)
+                pendingBytes += data.remaining()
+                return true
+            }
+        }
+        
+        /** Closes the channel once all pending output has been written,
+         * but at most [XStreamClient.CLOSE_TIMEOUT_MILLIS] later. */
+        override fun close() {
+            lock.withLock {
+                closing = true
+                drained.signalAll()
+                if(output.isNotEmpty()) {
+                    closeDeadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(XStreamClient.CLOSE_TIMEOUT_MILLIS)
+                    closingConnections.add(this)
+                    requestInterestUpdate()
+                    return
+                }
+            }
+            channel.close()
+        }
+        
+        /** Closes the channel if its pending output was not written in time. Called by the selector thread. */
+        fun closeIfOverdue(now: Long) {
+            if(now - closeDeadline >= 0) {
+                logger.warn("{} did not take its output within {}ms, closing it", client, XStreamClient.CLOSE_TIMEOUT_MILLIS)
+                forceClose()
+            }
+        }
+        
+        /** Drops the pending output and closes the channel. */
+        fun forceClose() {
+            lock.withLock {
+                output.clear()
+                pendingBytes = 0
+                drained.signalAll()
+            }
+            closeChannel()
+        }
+        
+        private fun closeChannel() {
+            closingConnections.remove(this)
+            try {
+                channel.close()
+            } catch(e: IOException) {
+                logger.warn("Failed to close $channel", e)
+            }
+        }
+        
+        /** Reads available bytes and hands complete packets to the workers. Called by the selector thread. */
+        fun read() {
+            input.clear()
+            val read = try {
+                channel.read(input)
+            } catch(e: IOException) {
+                end(DisconnectCause.LOST_CONNECTION, e)
+                return
+            }
+            if(read < 0) {
+                end(DisconnectCause.LOST_CONNECTION, EOFException("$channel reached end of stream"))
+                return
+            }
+            input.flip()
+            try {
+                framer.feed(input).forEach { frame -> submit { client.receiveFrame(frame) } }
+                // reject unknown packets right away instead of waiting for them to be complete
+                framer.openElement?.takeIf { it != checkedElement }?.let { name ->
+                    checkedElement = name
+                    client.getXStream().mapper.realClass(name)
+                }
+                if(framer.isFinished)
+                    end(DisconnectCause.LOST_CONNECTION, EOFException("$channel closed the protocol"))
+            } catch(e: IOException) {
+                end(DisconnectCause.PROTOCOL_ERROR, e)
+            } catch(e: XStreamException) {
+                end(DisconnectCause.PROTOCOL_ERROR, e)
+            }
+        }
+        
+        /** Stops reading and lets the client disconnect after all packets received before. */
+        private fun end(cause: DisconnectCause, exception: Exception) {
+            reading = false
+            updateInterest()
+            submit { client.abort(cause, exception) }
+        }
+        
+        /** Writes as much pending output as the channel accepts.
+         * @return whether no output is pending anymore */
+        fun write(): Boolean {
+            lock.withLock {
+                try {
+                    while(output.isNotEmpty()) {
+                        val data = output.first()
+                        channel.write(data)
+                        if(data.hasRemaining())
+                            return false
+                        output.removeFirst()
+                        pendingBytes -= data.capacity()
+                        drained.signalAll()
+                    }
+                    if(closing)
+                        closeChannel()
+                } catch(e: IOException) {
+                    output.clear()
+                    pendingBytes = 0
+                    drained.signalAll()
+                    // a closed client does not close the connection again
+                    if(closing)
+                        closeChannel()
+                    else
+                        submit { client.abort(DisconnectCause.LOST_CONNECTION, e) }
+                }
+                return true
+            }
+        }
+        
+        private fun requestInterestUpdate() {
+            interestUpdates.add(this)
+            selector.wakeup()
+        }
+        
+        /** Called by the selector thread to register for reading and, if output is pending, writing. */
+        fun updateInterest() {
+            if(!key.isValid)
+                return
+            val writing = lock.withLock { output.isNotEmpty() }
+            key.interestOps((if(reading && !closing) SelectionKey.OP_READ else 0) or
+                            (if(writing) SelectionKey.OP_WRITE else 0))
+        }
+        
+        private fun submit(task: () -> Unit) {
+            tasks.add(task)
+            if(scheduled.compareAndSet(false, true)) {
+                try {
+                    workers.execute(::process)
+                } catch(e: RejectedExecutionException) {
+                    logger.debug("Dropping tasks of {}, workers are shut down", this)
+                }
+            }
+        }
+        
+        private fun process() {
+            do {
+                while(true) {
+                    val task = tasks.poll() ?: break
+                    try {
+                        task()
+                    } catch(e: Exception) {
+                        logger.error("Processing input of $client failed", e)
+                    }
+                }
+                scheduled.set(false)
+            } while(tasks.isNotEmpty() && scheduled.compareAndSet(false, true))
+        }
+        
+        override fun toString() = "NioConnection{channel=$channel}"
+    }
+    
+    companion object {
+        private val logger = LoggerFactory.getLogger(NioClientListener::class.java)
+        private const val BUFFER_SIZE = 8192
+        /** How often the selector thread checks for connections to close while some are closing. */
+        private const val CLOSE_CHECK_MILLIS = 100L
+    }
+}
@@ -2,10 +2,13 @@ package sc.server.gaming
 
 import io.kotest.core.spec.IsolationMode
 import io.kotest.core.spec.style.WordSpec
+import io.kotest.inspectors.forAll
 import io.kotest.matchers.*
 import io.kotest.matchers.collections.*
 import io.kotest.matchers.maps.shouldContainExactly
+import io.kotest.matchers.types.shouldBeInstanceOf
 import org.junit.jupiter.api.assertThrows
+import sc.api.plugins.IGamePlugin
 import sc.protocol.requests.PrepareGameRequest
 import sc.server.Configuration
 import sc.server.helpers.StringNetworkInterface
@@ -15,6 +18,9 @@ import sc.shared.PlayerScore
 import sc.shared.ScoreCause
 import sc.shared.SlotDescriptor
 import java.io.StringWriter
+import java.util.concurrent.ExecutionException
+import java.util.concurrent.TimeUnit
+import kotlin.concurrent.thread
 
 val minimalReplay = """
     <protocol>
@@ -66,6 +72,9 @@ val minimalReplay = """
     </room>
     </protocol>""".trimIndent()
 
+/** @return the clients of the room once it handled everything submitted before */
+fun GameRoom.awaitClients(): Collection<Any> = call { clients }.get(1, TimeUnit.SECONDS)
+
 class GameRoomTest: WordSpec({
     isolationMode = IsolationMode.SingleInstance
     val client = Client(StringNetworkInterface("")).apply { start() }
@@ -80,9 +89,17 @@ class GameRoomTest: WordSpec({
         "add a second player to the existing game" {
             manager.joinOrCreateGame(client, TestPlugin.TEST_PLUGIN_UUID).playerCount shouldBe 2
         }
+        "fail a call whose task throws an Error" {
+            val error = assertThrows<ExecutionException> {
+                room.call<Unit> { throw AssertionError("test") }.get(1, TimeUnit.SECONDS)
+            }
+            error.cause.shouldBeInstanceOf<AssertionError>()
+            room.awaitClients() shouldHaveSize 2
+        }
         "return correct scores on game over" {
+            room.awaitClients() shouldHaveSize 2
             val playersScores = room.game.players.associateWith { PlayerScore(ScoreCause.REGULAR, "Game terminated", 0, it.team.index, 2) }
-            room.onGameOver(playersScores)
+            room.call { room.onGameOver(playersScores) }.get(1, TimeUnit.SECONDS)
             room.result.isRegular shouldBe true
             room.result.scores shouldContainExactly playersScores
             room.result.winner shouldBe null
@@ -94,6 +111,45 @@ class GameRoomTest: WordSpec({
             replayWriter.toString() shouldBe minimalReplay.replace("some-id", room.id)
         }
     }
+    "A GameRoomManager with concurrent joins" should {
+        val manager = GameRoomManager()
+        "fill every room it creates" {
+            (1..16).map {
+                thread { manager.joinOrCreateGame(client, TestPlugin.TEST_PLUGIN_UUID) }
+            }.forEach { it.join() }
+            manager.games shouldHaveSize 8
+            manager.games.forAll { it.awaitClients() shouldHaveSize 2 }
+            manager.findRoom(manager.games.first().id) shouldBe manager.games.first()
+        }
+        "not put clients into prepared or removed rooms" {
+            val prepared = manager.findRoom(manager.prepareGame(PrepareGameRequest(TestPlugin.TEST_PLUGIN_UUID)).roomId)
+            val open = manager.findRoom(manager.joinOrCreateGame(client, TestPlugin.TEST_PLUGIN_UUID).roomId)
+            open shouldNotBe prepared
+            prepared.clients shouldHaveSize 0
+            manager.remove(open)
+            manager.joinOrCreateGame(client, TestPlugin.TEST_PLUGIN_UUID).roomId shouldNotBe open.id
+            open.awaitClients() shouldHaveSize 1
+        }
+    }
+    "Matchmaking" should {
+        val manager = GameRoomManager()
+        "treat a missing game type like the id of the plugin" {
+            val roomId = manager.joinOrCreateGame(client, null).roomId
+            manager.joinOrCreateGame(client, IGamePlugin.loadPlugin(null).id).roomId shouldBe roomId
+        }
+        "put clients into unreserved slots of prepared rooms" {
+            val prepared = manager.prepareGame(PrepareGameRequest(TestPlugin.TEST_PLUGIN_UUID, descriptor2 = SlotDescriptor("open", reserved = false)))
+            manager.joinOrCreateGame(client, TestPlugin.TEST_PLUGIN_UUID).roomId shouldBe prepared.roomId
+            manager.findRoom(prepared.roomId).isOpen shouldBe false
+        }
+        "offer slots whose reservation was freed" {
+            val prepared = manager.prepareGame(PrepareGameRequest(TestPlugin.TEST_PLUGIN_UUID))
+            manager.findRoom(prepared.roomId).isOpen shouldBe false
+            ReservationManager.freeReservation(prepared.reservations[1])
+            manager.findRoom(prepared.roomId).awaitClients() shouldHaveSize 0
+            manager.joinOrCreateGame(client, TestPlugin.TEST_PLUGIN_UUID).roomId shouldBe prepared.roomId
+        }
+    }
     "A GameRoom with prepared reservations" should {
         val manager = GameRoomManager()
         val player2name = "opponent"
@@ -106,25 +162,25 @@ class GameRoomTest: WordSpec({
             assertThrows<UnknownReservationException> {
                 ReservationManager.redeemReservationCode(client, "nope")
             }
-            room.join(client) shouldBe false
+            room.claimSeat() shouldBe false
             room.clients shouldHaveSize 0
         }
         "join a client with reservation" {
             ReservationManager.redeemReservationCode(client, reservations[0])
-            room.clients shouldHaveSize 1
+            room.awaitClients() shouldHaveSize 1
         }
         "not accept a reservation twice" {
             assertThrows<UnknownReservationException> {
                 ReservationManager.redeemReservationCode(client, reservations[0])
             }
-            room.clients shouldHaveSize 1
+            room.awaitClients() shouldHaveSize 1
         }
         "accept a second client and create Players" {
             ReservationManager.redeemReservationCode(client, reservations[1])
-            room.clients shouldHaveSize 2
+            room.awaitClients() shouldHaveSize 2
         }
         "reject a third client" {
-            room.join(client) shouldBe false
+            room.claimSeat() shouldBe false
             room.clients shouldHaveSize 2
         }
         "have properly named players" {
@@ -132,4 +188,33 @@ class GameRoomTest: WordSpec({
             room.game.players[1].displayName shouldBe player2name
         }
     }
+    "Prepared reservations" should {
+        val manager = GameRoomManager()
+        "expire after the timeout" {
+            val codes = manager.prepareGame(PrepareGameRequest(TestPlugin.TEST_PLUGIN_UUID)).reservations
+            ReservationManager.evictExpired(System.nanoTime())
+            ReservationManager.redeemReservationCode(client, codes[0])
+            ReservationManager.evictExpired(System.nanoTime() + TimeUnit.SECONDS.toNanos(Configuration.getReservationTimeout() + 1L))
+            assertThrows<UnknownReservationException> {
+                ReservationManager.redeemReservationCode(client, codes[1])
+            }
+            val room = manager.games.single()
+            room.awaitClients() shouldHaveSize 1
+            room.isOpen shouldBe true
+        }
+        "be released with their room" {
+            val prepared = manager.prepareGame(PrepareGameRequest(TestPlugin.TEST_PLUGIN_UUID))
+            manager.remove(manager.findRoom(prepared.roomId))
+            assertThrows<UnknownReservationException> {
+                ReservationManager.redeemReservationCode(client, prepared.reservations[0])
+            }
+        }
+        "end their room if none was redeemed" {
+            val room = manager.findRoom(manager.prepareGame(PrepareGameRequest(TestPlugin.TEST_PLUGIN_UUID)).roomId)
+            ReservationManager.evictExpired(System.nanoTime() + TimeUnit.SECONDS.toNanos(Configuration.getReservationTimeout() + 1L))
+            room.awaitClients() shouldHaveSize 0
+            room.isOver shouldBe true
+            manager.games shouldNotContain room
+        }
+    }
 })
@@ -0,0 +1,48 @@
+package sc.server.gaming
+
+import io.kotest.core.spec.style.FunSpec
+import io.kotest.matchers.shouldBe
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.Executors
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicInteger
+
+class MailboxTest: FunSpec({
+    val executor = Executors.newFixedThreadPool(4)
+    afterSpec { executor.shutdown() }
+    
+    test("runs tasks one at a time in order of submission") {
+        val mailbox = Mailbox(executor)
+        val count = Mailbox.BATCH_SIZE * 3
+        val order = ArrayList<Int>()
+        val running = AtomicInteger()
+        val overlaps = AtomicInteger()
+        val done = CountDownLatch(count)
+        repeat(count) { index ->
+            mailbox.submit {
+                if(running.incrementAndGet() > 1)
+                    overlaps.incrementAndGet()
+                order.add(index)
+                running.decrementAndGet()
+                done.countDown()
+            }
+        }
+        done.await(5, TimeUnit.SECONDS) shouldBe true
+        overlaps.get() shouldBe 0
+        synchronized(order) { order } shouldBe (0 until count).toList()
+    }
+    test("continues after a failing task") {
+        val mailbox = Mailbox(executor)
+        val done = CountDownLatch(1)
+        mailbox.submit { throw IllegalStateException("test") }
+        mailbox.submit { done.countDown() }
+        done.await(5, TimeUnit.SECONDS) shouldBe true
+    }
+    test("continues after a task throwing an Error") {
+        val mailbox = Mailbox(executor)
+        val done = CountDownLatch(1)
+        mailbox.submit { throw AssertionError("test") }
+        mailbox.submit { done.countDown() }
+        done.await(5, TimeUnit.SECONDS) shouldBe true
+    }
+})
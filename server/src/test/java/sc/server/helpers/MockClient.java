@@ -3,20 +3,21 @@ package sc.server.helpers;
 import org.jetbrains.annotations.NotNull;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import sc.networking.SerializedPacket;
 import sc.networking.UnprocessedPacketException;
 import sc.protocol.ProtocolPacket;
 import sc.protocol.room.RoomPacket;
 import sc.server.network.Client;
 
 import java.io.IOException;
-import java.util.ArrayDeque;
-import java.util.Queue;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
 
 public class MockClient extends Client {
   private final static Logger logger = LoggerFactory.getLogger(MockClient.class);
-  private final Queue<Object> outgoingMessages = new ArrayDeque<>();
+  /** Filled as rooms handle requests on their mailbox, so it is read with a timeout. */
+  private final BlockingQueue<Object> outgoingMessages = new LinkedBlockingQueue<>();
   private BlockingQueue<Object> objects = new LinkedBlockingQueue<>();
 
   public MockClient(StringNetworkInterface stringInterface) throws IOException {
@@ -35,8 +36,18 @@ public class MockClient extends Client {
     this.outgoingMessages.add(parsedPacket);
   }
 
+  @Override
+  public void send(SerializedPacket packet) {
+    send(packet.getPacket());
+  }
+
   public Object popMessage() {
-    return this.outgoingMessages.poll();
+    try {
+      return this.outgoingMessages.poll(1, TimeUnit.SECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return null;
+    }
   }
 
   @SuppressWarnings("unchecked")
@@ -0,0 +1,21 @@
+package sc.server.network
+
+import org.junit.jupiter.api.Test
+import sc.networking.BinaryProtocol
+import sc.server.plugins.TestPlugin
+
+/** Runs the [LobbyTest]s with players using the [BinaryProtocol]. */
+open class BinaryLobbyTest: LobbyTest() {
+    override val binary = true
+    
+    /** A frame with an unknown tag. */
+    override val illegalMessage = byteArrayOf(1, 99)
+    
+    @Test
+    fun shouldSwitchBothSidesToBinary() {
+        val player = connectPlayer()
+        player.joinGame(TestPlugin.TEST_PLUGIN_UUID)
+        await("Server switched") { clientMgr.clients.singleOrNull()?.isBinaryOutput == true }
+        await("Player switched") { player.isBinaryOutput }
+    }
+}
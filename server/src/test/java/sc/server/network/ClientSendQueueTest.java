@@ -0,0 +1,161 @@
+package sc.server.network;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+import sc.networking.INetworkInterface;
+import sc.networking.clients.XStreamClient.DisconnectCause;
+import sc.networking.clients.XStreamClient.OverflowPolicy;
+import sc.server.helpers.ExamplePacket;
+import sc.server.helpers.StringNetworkInterface;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ClientSendQueueTest {
+  /** A connection whose other side never reads. */
+  private static class StuckNetworkInterface implements INetworkInterface {
+    private final CountDownLatch closed = new CountDownLatch(1);
+
+    @Override
+    public InputStream getInputStream() {
+      return new InputStream() {
+        @Override
+        public int read() throws IOException {
+          await();
+          return -1;
+        }
+      };
+    }
+
+    @Override
+    public OutputStream getOutputStream() {
+      return new OutputStream() {
+        @Override
+        public void write(int b) throws IOException {
+          await();
+          throw new IOException("Closed");
+        }
+      };
+    }
+
+    private void await() throws InterruptedIOException {
+      try {
+        closed.await();
+      } catch (InterruptedException e) {
+        throw new InterruptedIOException();
+      }
+    }
+
+    @Override
+    public void close() {
+      closed.countDown();
+    }
+
+    boolean isClosed() {
+      return closed.getCount() == 0;
+    }
+  }
+
+  /** A connection that fails on the first write. */
+  private static class BrokenNetworkInterface extends StuckNetworkInterface {
+    @Override
+    public OutputStream getOutputStream() {
+      return new OutputStream() {
+        @Override
+        public void write(int b) throws IOException {
+          throw new IOException("Broken pipe");
+        }
+      };
+    }
+  }
+
+  @Test @Timeout(5)
+  public void writesQueuedPacketsBeforeClosing() throws IOException, InterruptedException {
+    StringNetworkInterface stringInterface = new StringNetworkInterface("<protocol>");
+    Client client = new Client(stringInterface);
+    client.getXStream().alias("example", ExamplePacket.class);
+    client.enableSendQueue(16, OverflowPolicy.BLOCK);
+
+    client.start();
+    client.send(new ExamplePacket());
+    client.send(new ExamplePacket());
+    client.close();
+    String data;
+    do {
+      Thread.sleep(10);
+      data = stringInterface.readData();
+    } while (!data.endsWith("</protocol>"));
+    assertTrue(data.startsWith("<protocol>\n  <example/>\n  <example/>"), data);
+  }
+
+  @Test @Timeout(5)
+  public void queuesCustomDataInOrder() throws IOException, InterruptedException {
+    StringNetworkInterface stringInterface = new StringNetworkInterface("<protocol>");
+    Client client = new Client(stringInterface);
+    client.getXStream().alias("example", ExamplePacket.class);
+    client.enableSendQueue(16, OverflowPolicy.DISCONNECT);
+
+    client.start();
+    client.send(new ExamplePacket());
+    client.sendCustomData("<custom/>");
+    client.send(new ExamplePacket());
+    client.close();
+    String data;
+    do {
+      Thread.sleep(10);
+      data = stringInterface.readData();
+    } while (!data.endsWith("</protocol>"));
+    assertTrue(data.matches("(?s)<protocol>\\s*<example/><custom/>\\s*<example/>.*"), data);
+  }
+
+  @Test
+  public void requiresQueueBeforeStart() throws IOException {
+    Client client = new Client(new StringNetworkInterface("<protocol>"));
+    client.start();
+    assertThrows(IllegalStateException.class, () -> client.enableSendQueue(16, OverflowPolicy.BLOCK));
+  }
+
+  @Test @Timeout(5)
+  public void disconnectsSlowConsumers() throws IOException {
+    Client client = new Client(new StuckNetworkInterface(), false);
+    client.enableSendQueue(1, OverflowPolicy.DISCONNECT);
+
+    client.start();
+    for (int i = 0; i < 3; i++)
+      client.send(new ExamplePacket());
+    assertTrue(client.isClosed());
+    assertEquals(DisconnectCause.SLOW_CONSUMER, client.getDisconnectCause());
+  }
+
+  @Test @Timeout(5)
+  public void closesNetworkWhenWriteFails() throws IOException, InterruptedException {
+    BrokenNetworkInterface network = new BrokenNetworkInterface();
+    Client client = new Client(network, false);
+    client.enableSendQueue(16, OverflowPolicy.BLOCK);
+
+    client.start();
+    client.send(new ExamplePacket());
+    while (!network.isClosed())
+      Thread.sleep(10);
+    assertEquals(DisconnectCause.LOST_CONNECTION, client.getDisconnectCause());
+  }
+
+  @Test @Timeout(10)
+  public void closesStuckConnectionAfterTimeout() throws IOException, InterruptedException {
+    StuckNetworkInterface network = new StuckNetworkInterface();
+    Client client = new Client(network, false);
+    client.enableSendQueue(16, OverflowPolicy.BLOCK);
+
+    client.start();
+    client.send(new ExamplePacket());
+    client.close();
+    assertFalse(network.isClosed());
+    while (!network.isClosed())
+      Thread.sleep(10);
+  }
+}
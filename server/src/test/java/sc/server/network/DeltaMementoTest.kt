@@ -0,0 +1,88 @@
+package sc.server.network
+
+import io.kotest.matchers.collections.shouldBeEmpty
+import io.kotest.matchers.shouldBe
+import org.junit.jupiter.api.Test
+import sc.networking.TcpNetwork
+import sc.networking.clients.LobbyClient
+import sc.protocol.room.DeltaMessage
+import sc.protocol.room.MementoMessage
+import sc.protocol.room.MoveRequest
+import sc.protocol.room.ResyncRequest
+import sc.protocol.room.RoomPacket
+import sc.server.client.TestLobbyClientListener
+import sc.server.helpers.TestGameHandler
+import sc.server.plugins.TestGameState
+import sc.server.plugins.TestMove
+import sc.server.plugins.TestPlugin
+import sc.server.plugins.TestStateDelta
+import java.net.ServerSocket
+import java.util.concurrent.LinkedBlockingQueue
+import java.util.concurrent.TimeUnit
+
+class DeltaMementoTest: RealServerTest() {
+    
+    @Test
+    fun clientAppliesDeltasAndResyncsOnDivergence() {
+        val roomId = "room"
+        val handler = TestGameHandler()
+        val received = LinkedBlockingQueue<Any>()
+        ServerSocket(0).use { socket ->
+            LobbyClient("localhost", socket.localPort).apply {
+                isDeltaMementos = true
+                asPlayer(handler)
+            }
+            val server = Client(TcpNetwork(socket.accept())).apply {
+                setRequestHandler(object: IClientRequestListener {
+                    override fun onRequest(source: Client, callback: PacketCallback) {
+                        received.add(callback.packet)
+                        callback.setProcessed()
+                    }
+                })
+                start()
+            }
+            
+            server.send(RoomPacket(roomId, MementoMessage(TestGameState(1, 0), null)))
+            server.send(RoomPacket(roomId, DeltaMessage(TestStateDelta(2, 1), TestGameState(2, 1).checksum)))
+            await("Delta applied") { handler.state == TestGameState(2, 1) }
+            
+            server.send(RoomPacket(roomId, DeltaMessage(TestStateDelta(3, 5), 0)))
+            received.poll(1, TimeUnit.SECONDS) shouldBe RoomPacket(roomId, ResyncRequest())
+            handler.state shouldBe TestGameState(2, 1)
+            
+            // dropped while waiting for the full state, as is the request to move
+            server.send(RoomPacket(roomId, DeltaMessage(TestStateDelta(4, 5), TestGameState(4, 5).checksum)))
+            server.send(RoomPacket(roomId, MoveRequest()))
+            server.send(RoomPacket(roomId, MementoMessage(TestGameState(4, 5), null)))
+            await("Move requested on the resynchronised state") { handler.moveRequest != null }
+            handler.state shouldBe TestGameState(4, 5)
+            handler.moveRequest!!.complete(TestMove(1))
+            (received.poll(1, TimeUnit.SECONDS) as RoomPacket).data shouldBe TestMove(1)
+            
+            server.send(RoomPacket(roomId, DeltaMessage(TestStateDelta(5, 1), TestGameState(5, 1).checksum)))
+            await("Deltas apply again") { handler.state == TestGameState(5, 1) }
+            received.shouldBeEmpty()
+            server.stop()
+        }
+    }
+    
+    @Test
+    fun roomResendsFullState() {
+        val listener = TestLobbyClientListener()
+        val player1 = connectPlayer().apply {
+            isDeltaMementos = true
+            addListener(listener)
+        }
+        val player2 = connectPlayer()
+        player1.joinGame(TestPlugin.TEST_PLUGIN_UUID)
+        player2.joinGame(TestPlugin.TEST_PLUGIN_UUID)
+        await("Game started") { listener.newStateReceived }
+        
+        listener.newStateReceived = false
+        listener.newState = null
+        player1.sendMessageToRoom(listener.roomId, ResyncRequest())
+        await("Full state resent") { listener.newStateReceived }
+        listener.newState shouldBe TestGameState()
+    }
+    
+}
@@ -76,7 +76,7 @@ class LobbyGameTest: WordSpec({
             "create a room for it" {
                 await("Room opened") { lobby.games.size shouldBe 1 }
                 val room = lobby.games.single()
-                room.clients shouldHaveSize 1
+                await("Player joined") { room.clients shouldHaveSize 1 }
                 "return GameResult on step" {
                     val roomListener = observeRoom(room.id)
                     admin.control(room.id).step(true)
@@ -10,7 +10,10 @@ import sc.server.plugins.TestPlugin
 import sc.shared.ScoreCause
 import java.net.SocketException
 
-class LobbyTest: RealServerTest() {
+open class LobbyTest: RealServerTest() {
+    
+    /** Data which is not a valid packet. */
+    protected open val illegalMessage = "<yarr>".toByteArray()
     
     @Test
     fun shouldEndGameOnDisconnect() {
@@ -45,7 +48,7 @@ class LobbyTest: RealServerTest() {
         room.isOver shouldBe false
         
         try {
-            player1.sendCustomData("<yarr>")
+            player1.sendCustomData(illegalMessage)
         } catch(_: SocketException) {
         }
         
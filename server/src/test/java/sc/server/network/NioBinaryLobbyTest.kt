@@ -0,0 +1,6 @@
+package sc.server.network
+
+/** Runs the [BinaryLobbyTest]s against the [NioClientListener]. */
+class NioBinaryLobbyTest: BinaryLobbyTest() {
+    override val nio = true
+}
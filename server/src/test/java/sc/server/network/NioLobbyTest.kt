@@ -0,0 +1,72 @@
+package sc.server.network
+
+import org.junit.jupiter.api.Assertions.assertTrue
+import org.junit.jupiter.api.Test
+import org.junit.jupiter.api.Timeout
+import sc.networking.clients.XStreamClient
+import sc.networking.clients.XStreamClient.DisconnectCause
+import sc.server.Configuration
+import java.net.InetSocketAddress
+import java.net.Socket
+import java.net.SocketException
+
+/** Runs the [LobbyTest]s against the [NioClientListener]. */
+class NioLobbyTest: LobbyTest() {
+    override val nio = true
+    
+    @Test
+    @Timeout(10)
+    fun disconnectsClientsNotReadingTheirOutput() {
+        val limit = Configuration.getNioOutputLimit()
+        Configuration.set(Configuration.NIO_OUTPUT_LIMIT_KEY, "1024")
+        try {
+            Socket("localhost", serverPort).use {
+                waitForConnect(1)
+                val client = clientMgr.clients.single()
+                val data = ByteArray(64 * 1024) { 'a'.toByte() }
+                repeat(1024) {
+                    if(!client.isClosed)
+                        client.sendCustomData(data)
+                }
+                await("Slow client disconnected") { client.disconnectCause == DisconnectCause.SLOW_CONSUMER }
+            }
+        } finally {
+            Configuration.set(Configuration.NIO_OUTPUT_LIMIT_KEY, limit.toString())
+        }
+    }
+    
+    @Test
+    @Timeout(15)
+    fun closesConnectionsNotReadingAfterTimeout() {
+        val limit = Configuration.getNioOutputLimit()
+        Configuration.set(Configuration.NIO_OUTPUT_LIMIT_KEY, (16 * 1024 * 1024).toString())
+        try {
+            Socket().use { socket ->
+                socket.receiveBufferSize = 4096
+                socket.connect(InetSocketAddress("localhost", serverPort))
+                waitForConnect(1)
+                val client = clientMgr.clients.single()
+                val data = ByteArray(1024 * 1024) { 'a'.toByte() }
+                repeat(8) { client.sendCustomData(data) }
+                client.stop()
+                Thread.sleep(XStreamClient.CLOSE_TIMEOUT_MILLIS + 500)
+                var received = 0L
+                try {
+                    val input = socket.getInputStream()
+                    val buffer = ByteArray(8192)
+                    while(true) {
+                        val read = input.read(buffer)
+                        if(read < 0)
+                            break
+                        received += read
+                    }
+                } catch(ignored: SocketException) {
+                    // the output was dropped
+                }
+                assertTrue(received < 8 * data.size, "Received all $received bytes")
+            }
+        } finally {
+            Configuration.set(Configuration.NIO_OUTPUT_LIMIT_KEY, limit.toString())
+        }
+    }
+}
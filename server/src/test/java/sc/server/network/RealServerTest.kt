@@ -25,11 +25,20 @@ abstract class RealServerTest {
     protected lateinit var clientMgr: ClientManager
     protected lateinit var gameMgr: GameRoomManager
     
+    /** Whether the server should use the [NioClientListener]. */
+    protected open val nio = false
+    
+    /** Whether players connected via [connectPlayer] request the binary encoding. */
+    protected open val binary = false
+    
     protected val serverPort: Int
         get() = NewClientListener.lastUsedPort
     
     fun connectPlayer() =
-            LobbyClient("localhost", serverPort).apply { start() }
+            LobbyClient("localhost", serverPort).apply {
+                isBinaryEncoding = binary
+                start()
+            }
     
     @OptIn(ExperimentalTime::class)
     fun await(clue: String? = null, time: Duration = Duration.seconds(1), f: () -> Boolean) = runBlocking {
@@ -43,6 +52,7 @@ abstract class RealServerTest {
         // Random PortAllocation
         Configuration.set(Configuration.PORT_KEY, "0")
         Configuration.set(Configuration.PASSWORD_KEY, "TEST_PASSWORD")
+        Configuration.set(Configuration.NIO_KEY, nio)
         this.lobby = Lobby()
         this.clientMgr = this.lobby.clientManager
         this.gameMgr = this.lobby
@@ -53,6 +53,21 @@ class RequestTest: RealServerTest() {
         gameRoom.observers.size shouldBe 1
     }
     
+    @Test
+    fun observerIsRemovedOnDisconnect() {
+        player1.joinGame(TestPlugin.TEST_PLUGIN_UUID)
+        player2.joinGame(TestPlugin.TEST_PLUGIN_UUID)
+        await("Game created") { lobby.games.size == 1 }
+        
+        val gameRoom = lobby.games.single()
+        player3.authenticate(PASSWORD)
+        player3.observe(gameRoom.id)
+        await("Observing") { gameRoom.observers.size == 1 }
+        
+        player3.stop()
+        await("Observer removed") { gameRoom.observers.isEmpty() }
+    }
+    
     @Test
     fun stepRequestException() {
         val admin = player1
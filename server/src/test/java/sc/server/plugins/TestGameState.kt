@@ -1,7 +1,9 @@
 package sc.server.plugins
 
+import sc.api.plugins.IDeltaGameState
 import sc.api.plugins.IGameState
 import sc.api.plugins.IMove
+import sc.api.plugins.IStateDelta
 import sc.api.plugins.ITeam
 import sc.api.plugins.Team
 import sc.framework.plugins.Player
@@ -9,7 +11,7 @@ import sc.framework.plugins.Player
 data class TestGameState(
         override var turn: Int = 0,
         var state: Int = 0,
-): IGameState {
+): IDeltaGameState {
     override val currentTeam: Team
         get() = Team.values()[turn % Team.values().size]
     
@@ -22,8 +24,22 @@ data class TestGameState(
     
     override val round get() = turn / 2
     
+    override val checksum: Long
+        get() = turn * 31L + state
+    
+    override fun diff(previous: IGameState): IStateDelta = TestStateDelta(turn, state)
+    
     val red = Player(Team.ONE)
     val blue = Player(Team.TWO)
     
     override fun clone() = TestGameState(turn, state)
 }
+
+/** Replaces the whole [TestGameState], which consists of only two numbers. */
+data class TestStateDelta(val turn: Int, val state: Int): IStateDelta {
+    override fun applyTo(state: IGameState) {
+        state as TestGameState
+        state.turn = turn
+        state.state = this.state
+    }
+}
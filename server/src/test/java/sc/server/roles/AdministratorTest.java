@@ -11,6 +11,9 @@ import sc.server.network.Client;
 import sc.server.network.PacketCallback;
 import sc.server.plugins.TestPlugin;
 
+import java.util.Arrays;
+import java.util.Collections;
+
 public class AdministratorTest extends AbstractRoleTest {
   private static final String CORRECT_PASSWORD = "this-is-a-secret";
   private static final String WRONG_PASSWORD = "i-am-a-hacker";
@@ -37,6 +40,18 @@ public class AdministratorTest extends AbstractRoleTest {
     Assertions.assertFalse(client.isAdministrator());
   }
 
+  @Test
+  public void shouldBeIndexedAsAdminUntilDisconnect() {
+    Client player = connectClient();
+    Client admin = connectAsAdmin();
+    Assertions.assertIterableEquals(Collections.singletonList(admin), this.clientMgr.getAdministrators());
+    Assertions.assertEquals(Arrays.asList(player, admin), this.clientMgr.getClients());
+
+    admin.stop();
+    Assertions.assertTrue(this.clientMgr.getAdministrators().isEmpty());
+    Assertions.assertEquals(Collections.singletonList(player), this.clientMgr.getClients());
+  }
+
   protected MockClient connectAsAdmin() {
     final MockClient client = connectClient();
 
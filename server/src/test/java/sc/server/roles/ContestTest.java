@@ -35,6 +35,8 @@ public class ContestTest extends AdministratorTest {
             .getReservations().get(1))));
     this.lobby.onRequest(player2, new PacketCallback(new JoinPreparedRoomRequest(response
             .getReservations().get(0))));
+    // the slots are filled on the mailbox of the room
+    room.call(room::getSlots).join();
 
     Assertions.assertEquals(2, room.getSlots().size());
 
@@ -3,5 +3,5 @@ rootProject.buildFileName = "gradle/build.gradle.kts"
 
 includeBuild("gradle/custom-tasks")
 
-include("sdk", "server", "plugin", "player", "test-client")
+include("sdk", "server", "plugin", "player", "test-client", "benchmarks")
 project(":test-client").projectDir = file("helpers/test-client")